@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.jmh;
+
+import io.github.matrixeditor.shjar.crypto.ZxxZBase64;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ZxxZBase64} with the JDK decoders. The sizes are decoded
+ * bytes: 32 and 48 bytes are the lengths of encrypted method and class names.
+ * Wrapped input is compared with the MIME decoder, since the basic JDK decoder
+ * rejects line breaks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Base64Benchmark {
+
+    @Param({"32", "48", "1024", "65536"})
+    public int size;
+
+    private byte[] encoded;
+
+    private byte[] wrapped;
+
+    private byte[] buffer;
+
+    @Setup
+    public void setup() {
+        byte[] plain = new byte[size];
+        new Random(size).nextBytes(plain);
+        encoded = Base64.getEncoder().encode(plain);
+        wrapped = Base64.getMimeEncoder().encode(plain);
+        buffer = new byte[ZxxZBase64.maxDecodedLength(wrapped.length)];
+    }
+
+    @Benchmark
+    public byte[] jdk() {
+        return Base64.getDecoder().decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] zxxz() {
+        return ZxxZBase64.decode(encoded);
+    }
+
+    @Benchmark
+    public int zxxzInPlace() {
+        return ZxxZBase64.decode(encoded, 0, encoded.length, buffer, 0);
+    }
+
+    @Benchmark
+    public byte[] jdkWrapped() {
+        return Base64.getMimeDecoder().decode(wrapped);
+    }
+
+    @Benchmark
+    public int zxxzWrapped() {
+        return ZxxZBase64.decode(wrapped, 0, wrapped.length, buffer, 0);
+    }
+}
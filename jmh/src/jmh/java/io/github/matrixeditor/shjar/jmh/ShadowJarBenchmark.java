@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.jmh;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ShadowJar#open(String, File)} on the bundled
+ * <code>shadow.txt</code> and the key decoding in
+ * {@link ZxxZCipher#decodeXOR(String)}.
+ * <p>
+ * The location of <code>shadow.txt</code> is passed through the system
+ * property <code>shjar.shadow</code> by the build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShadowJarBenchmark {
+
+    private File shadow;
+
+    @Setup
+    public void setup() {
+        shadow = new File(System.getProperty("shjar.shadow", "shadow.txt"));
+        if (!shadow.isFile()) {
+            throw new IllegalStateException("shadow.txt not found: " + shadow.getAbsolutePath());
+        }
+    }
+
+    @Benchmark
+    public ShadowJar open() throws Exception {
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, shadow)) {
+            return jar;
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] decodeXOR() {
+        return ZxxZCipher.decodeXOR(ShadowJar.DEFAULT_SECRET_KEY);
+    }
+}
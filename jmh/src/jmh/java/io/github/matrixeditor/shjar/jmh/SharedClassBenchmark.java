@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.jmh;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.SharedClass;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.crypto.ZxxZCryptoProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of {@link ShadowJar#addSharedClass(String, String)}
+ * with one and with four threads sharing a single {@link ShadowJar}.
+ * <p>
+ * <code>addSharedClass</code> creates and decrypts a new {@link SharedClass}
+ * on an empty {@link ShadowJar}, <code>addSharedClassContended</code> adds
+ * distinct classes from four threads to one {@link ShadowJar}, so every call
+ * is a miss as well, <code>resolve</code> decrypts the names of an
+ * existing {@link SharedClass} again through the shared cipher and
+ * <code>cached</code> only hits the cache of already added classes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SharedClassBenchmark {
+
+    /**
+     * Encrypted class and method names taken from the <code>SharedClassTest</code>.
+     */
+    static final String[][] NAMES = {
+            {"3K8ELf0l97OoJkLZ8w0j1a7PyOLXhiU05fzwfJl+q5R78K5HrzBW+Y6Q9dHwMhs9", "b/KmM8qxPHQsR3T0CZ/F1d5gVFlEyl3WbrFOrFCfLkc="},
+            {"y/7Ec+Kioax0ZYAEH/NiuXIsrXhfXjhFi2F/nP/uGkIQw7jUhBGY0W6baOqNedZ3", "0cd3YaSrpW7P/AkpW4/onj4SWvDEhcgrou0hv6tCD+s="},
+            {"7OKu9eBgadNAt0os6Yom9Fc4Z+g/QG9jOe+s+JAGcO8yKBHrGX1guBev/xXHxnY1", "oyXxJz1/0whZ1sjpKwx6gZrLwCk4v4rbcD6dwdNy6Cs="},
+            {"7KqrGXdk/af3XqeV7Kdf9PbIbh3C1JbHd2XfO7vMbAGonJ11eSDtjbVaiMZyTrse", "J+RI1JNo03xly9SRWO99cvEQhgdX6x+RL8PvxYQsPic="},
+            {"poItj6KYBt5BdnGUyKVpTqoJe9uUrbj0v36XCagBsYjc7oBvjejRtfaJj7hby90a", "qrGvg6pF9No4qMDhGfUiE0qkqx8DIEI1ObOP4v8z9Vw="},
+            {"ljgMduD5kKPhK6qoocDB5WikkD/CX1UhLGscwfIdkLacCDlfdaQLvcdlCLYlVWEY", "PQw299M+gyZAcirIo44nMA1T6aZFSbwBV2vuW7mK5no="},
+            {"WFWMehHtsFVdDUEDmR6QBWCVOt7vhsukeVfF7GyA4nJfn/HGydHkg9TxbsV2ogHJ", "anxhUuNThpd2uUrKqPFlUd7Xx/0GNeeVxwSMkxx8/S8="},
+            {"wFR9IVBeC3DxjLUHG4VrPvC6sFnF3i6EXAzgF2FV6F/P1tVIxRsZCqzBo3bMqAjw", "FngGcM4uMQo5eKR2FwSlMJnWgsaWh19tKknwKd4tbUk="}
+    };
+
+    @State(Scope.Benchmark)
+    public static class SharedJar {
+
+        ShadowJar jar;
+
+        SharedClass[] classes;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            jar = ShadowJar.getInstance();
+            for (String[] names : NAMES) {
+                jar.addSharedClass(names[0], names[1]);
+            }
+            classes = jar.getSharedClasses();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int index;
+
+        int next() {
+            index = (index + 1) % NAMES.length;
+            return index;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FreshJar {
+
+        ShadowJar jar;
+
+        @Setup(Level.Invocation)
+        public void setup() throws Exception {
+            jar = ShadowJar.getInstance();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SharedClass addSharedClass(FreshJar state, Cursor cursor) {
+        String[] names = NAMES[cursor.next()];
+        return state.jar.addSharedClass(names[0], names[1]);
+    }
+
+    /**
+     * A {@link ShadowJar} shared by all threads that is replaced before every
+     * iteration.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedFreshJar {
+
+        ShadowJar jar;
+
+        @Setup(Level.Iteration)
+        public void setup() throws Exception {
+            jar = ShadowJar.getInstance();
+        }
+    }
+
+    /**
+     * Encrypted class names that no other thread uses. An iteration must not
+     * use more names than there are, otherwise it would measure cache hits.
+     */
+    @State(Scope.Thread)
+    public static class DistinctNames {
+
+        static final int COUNT = 1 << 15;
+
+        static final AtomicInteger THREADS = new AtomicInteger();
+
+        final String[] classNames = new String[COUNT];
+
+        String methodName;
+
+        int index;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            Cipher cipher = Cipher.getInstance("AES", new ZxxZCryptoProvider());
+            cipher.init(Cipher.ENCRYPT_MODE,
+                    new SecretKeySpec(ZxxZCipher.decodeXOR(ShadowJar.DEFAULT_SECRET_KEY), "AES"));
+            String prefix = "com.google.android.ads.zxxz.T" + THREADS.getAndIncrement() + "C";
+            for (int i = 0; i < COUNT; i++) {
+                classNames[i] = encrypt(cipher, prefix + i);
+            }
+            methodName = encrypt(cipher, "a");
+        }
+
+        @Setup(Level.Iteration)
+        public void rewind() {
+            index = 0;
+        }
+
+        String next() {
+            if (index == COUNT) {
+                throw new IllegalStateException("Out of distinct names, shorten the iterations");
+            }
+            return classNames[index++];
+        }
+
+        private static String encrypt(Cipher cipher, String name) throws Exception {
+            return new String(cipher.doFinal(name.getBytes(StandardCharsets.UTF_8)), StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    @Warmup(time = 200, timeUnit = TimeUnit.MILLISECONDS)
+    @Measurement(time = 200, timeUnit = TimeUnit.MILLISECONDS)
+    public SharedClass addSharedClassContended(SharedFreshJar state, DistinctNames names) {
+        return state.jar.addSharedClass(names.next(), names.methodName);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SharedClass resolve(SharedJar state, Cursor cursor) {
+        SharedClass sharedClass = state.classes[cursor.next()];
+        sharedClass.run();
+        return sharedClass;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SharedClass resolveContended(SharedJar state, Cursor cursor) {
+        SharedClass sharedClass = state.classes[cursor.next()];
+        sharedClass.run();
+        return sharedClass;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SharedClass cached(SharedJar state, Cursor cursor) {
+        String[] names = NAMES[cursor.next()];
+        return state.jar.addSharedClass(names[0], names[1]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SharedClass cachedContended(SharedJar state, Cursor cursor) {
+        String[] names = NAMES[cursor.next()];
+        return state.jar.addSharedClass(names[0], names[1]);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.jmh;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.crypto.ZxxZCryptoProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link ZxxZCipher} de- and encryption for different payload
+ * sizes. The sizes are plain bytes; the decryption input is the matching
+ * Base64 payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ZxxZCipherBenchmark {
+
+    @Param({"16", "1024", "65536", "1048576"})
+    public int size;
+
+    private Cipher cipher;
+
+    private SecretKey key;
+
+    private byte[] plain;
+
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        key = new SecretKeySpec(ZxxZCipher.decodeXOR(ShadowJar.DEFAULT_SECRET_KEY), "AES");
+        cipher = Cipher.getInstance("AES", new ZxxZCryptoProvider());
+
+        plain = new byte[size];
+        new Random(size).nextBytes(plain);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        encrypted = cipher.doFinal(plain);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        return cipher.doFinal(encrypted);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        return cipher.doFinal(plain);
+    }
+}
@@ -26,17 +26,37 @@ import android.content.Context;
 import android.os.FileObserver;
 import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
 import io.github.matrixeditor.shjar.crypto.ZxxZCryptoProvider;
+import io.github.matrixeditor.shjar.format.PayloadCodec;
+import io.github.matrixeditor.shjar.format.PayloadFormats;
+import io.github.matrixeditor.shjar.format.PlainJarCodec;
+import io.github.matrixeditor.shjar.metrics.Counter;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.Operation;
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.Hashing;
+import io.github.matrixeditor.shjar.util.NameDictionary;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+import io.github.matrixeditor.shjar.util.ZipIndex;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
-import java.util.AbstractMap;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 /**
@@ -55,10 +75,11 @@ import java.util.stream.Stream;
  * }
  * }</pre>
  * <p>
- * Future versions of this class may be packed into new classes that are
- * named like <code>ShadowJarV2</code> and so on. Future releases of this
- * module will implement a mechanism that searches for the encrypted JAR
- * string in the linked source code.
+ * Future versions of the payload format are supported by a
+ * {@link PayloadCodec}. The format of every payload is detected from its first
+ * bytes (see {@link PayloadFormats}), so old and new payloads can be read by
+ * the same object. Future releases of this module will implement a mechanism
+ * that searches for the encrypted JAR string in the linked source code.
  *
  * @author MatrixEditor
  * @since 1.0
@@ -78,16 +99,53 @@ public class ShadowJar implements Closeable {
      * or <code>dex</code> directory.
      */
     public static final String FILENAME = "1489418796403";
+
+    private static final long NAME_SEED = 0x7A78787A434C5353L;
+
+    /**
+     * The largest payload buffer that is kept for the next {@link #read(String)}.
+     */
+    private static final int MAX_PAYLOAD_BUFFER = 1 << 20;
+
+    /**
+     * Spill files that could not be deleted yet, for example because they
+     * are still mapped on Windows. Deleting them is retried on every spill
+     * and when the JVM exits.
+     */
+    private static final Set<File> UNDELETED_SPILL_FILES = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicBoolean SPILL_CLEANUP_HOOK = new AtomicBoolean();
+    /**
+     * A simple wrapper for storing all created {@link SharedClass} instances,
+     * keyed by a hash of both encrypted names.
+     */
+    private final Map<Long, SharedClass> sharedClassCache = new ConcurrentHashMap<>();
+
     /**
-     * A simple wrapper for storing all created {@link SharedClass} instances.
+     * The names of all {@link SharedClass} objects, created on the first
+     * {@link #addSharedClass(String, String)} call and dropped on reset.
      */
-    private final Map<Entry<String, String>, SharedClass> sharedClassCache =
-            new HashMap<>();
+    private volatile NameDictionary names;
     /**
      * A variable indicating whether this object is closed;
      */
     private volatile transient boolean closed;
 
+    /**
+     * A variable indicating whether this object is shared by a {@link ShadowJarRegistry}.
+     */
+    private volatile boolean shared;
+
+    /**
+     * The {@link ShadowJarPool} this object is returned to when it is closed.
+     */
+    private volatile ShadowJarPool pool;
+
+    /**
+     * A variable indicating whether this object waits in its pool.
+     */
+    private volatile boolean idle;
+
     /**
      * An instance of the {@link ZxxZCipher} which provides encryption
      * and decryption.
@@ -105,6 +163,53 @@ public class ShadowJar implements Closeable {
      */
     private byte[] decryptedContent;
 
+    /**
+     * The bytes of the last payload read from a {@link String}, reused by
+     * the next one.
+     */
+    private byte[] payloadBuffer;
+
+    /**
+     * A temporary file storing the decrypted jar file if it exceeded the
+     * memory budget.
+     */
+    private File spillFile;
+
+    /**
+     * The maximum number of decrypted bytes that are kept on the heap.
+     */
+    private volatile long memoryBudget = Long.MAX_VALUE;
+
+    /**
+     * The index of the decrypted archive, created on the first entry access.
+     */
+    private ZipIndex index;
+
+    /**
+     * Recently decompressed entries of the decrypted archive in access order.
+     */
+    private final LinkedHashMap<String, byte[]> entryCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of bytes stored in the {@link #entryCache}.
+     */
+    private long entryCacheBytes;
+
+    /**
+     * The maximum number of bytes stored in the {@link #entryCache}.
+     */
+    private long entryCacheSize = 1 << 20;
+
+    /**
+     * The format of the last payload that was read.
+     */
+    private volatile PayloadCodec payloadCodec;
+
+    /**
+     * An optional precompiled mapping of encrypted to decrypted names.
+     */
+    private volatile SharedClassSnapshot snapshot;
+
     // prevent instance creation from outside
     private ShadowJar() {
     }
@@ -153,6 +258,25 @@ public class ShadowJar implements Closeable {
         return jar;
     }
 
+    /**
+     * Creates a new {@link ShadowJar} object and reads the content from the
+     * given {@link File}, until the given token is cancelled.
+     *
+     * @param key   the encoded secret key which should be used
+     * @param src   the file to read
+     * @param token the cancellation token
+     * @return a new {@link ShadowJar} object with the decrypted content
+     * @throws GeneralSecurityException    if the {@link ZxxZCipher} could not be initialized
+     * @throws IOException                 if an error while reading occurs
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public static ShadowJar open(String key, File src, CancellationToken token)
+            throws GeneralSecurityException, IOException {
+        ShadowJar jar = getInstance(key);
+        jar.read(src, token);
+        return jar;
+    }
+
     /**
      * Creates a new {@link ShadowJar} object and reads the content from the
      * given {@link String}.
@@ -197,37 +321,166 @@ public class ShadowJar implements Closeable {
 
     /**
      * Tries to read all bytes and to decrypt them from the given {@link String}.
+     * <p>
+     * The format of the payload is detected from its first bytes, see
+     * {@link PayloadFormats}. The content is always decrypted into memory, as
+     * the encrypted payload is already stored on the heap. Use
+     * {@link #read(File)} for payloads that may exceed the
+     * {@link #setMemoryBudget(long) memory budget}.
+     * <p>
+     * The bytes of the payload, its decoded ciphertext and the padded
+     * plaintext are kept in buffers of this object, so a {@link #reset()} or
+     * pooled object only allocates the decrypted content for the next payload.
      *
      * @param content the encrypted content
      * @throws GeneralSecurityException if an error during encryption occurs
+     * @throws IllegalArgumentException if the payload format is unknown or
+     *                                  the content is a plain JAR file
      */
     public synchronized void read(String content) throws GeneralSecurityException {
-        ensureOpen();
-        zxxz.init(Cipher.DECRYPT_MODE, secretKey);
-        decryptedContent = zxxz.doFinal(content.getBytes());
+        ensureWritable();
+        long start = Metrics.start();
+        try {
+            releaseContent();
+            byte[] payload = payloadBuffer;
+            int length = content.length();
+            if (payload == null || payload.length < length) {
+                payload = new byte[length];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = content.charAt(i);
+                if (c >= 0x80) {
+                    // not ASCII, encoded with the default charset as before
+                    payload = content.getBytes();
+                    length = payload.length;
+                    break;
+                }
+                payload[i] = (byte) c;
+            }
+            if (length == content.length() && payload.length <= MAX_PAYLOAD_BUFFER) {
+                payloadBuffer = payload;
+            }
+
+            PayloadCodec codec = PayloadFormats.detect(payload, length);
+            if (codec == null) {
+                throw new IllegalArgumentException("Unknown payload format");
+            }
+            if (codec instanceof PlainJarCodec) {
+                // the characters of a String do not preserve binary content
+                throw new IllegalArgumentException("A plain JAR file cannot be read from a String");
+            }
+            synchronized (zxxz) {
+                decryptedContent = codec.decode(payload, length, zxxz, secretKey);
+            }
+            payloadCodec = codec;
+        } catch (OperationCancelledException e) {
+            releaseContent();
+            throw e;
+        } finally {
+            Metrics.stop(Operation.READ, start);
+        }
+    }
+
+    /**
+     * Reads and decrypts the given {@link String} like {@link #read(String)},
+     * until the given token is cancelled.
+     *
+     * @param content the encrypted content
+     * @param token   the cancellation token
+     * @throws GeneralSecurityException    if an error during encryption occurs
+     * @throws OperationCancelledException if the token was cancelled, this
+     *                                     object holds no content then
+     */
+    public synchronized void read(String content, CancellationToken token) throws GeneralSecurityException {
+        CancellationToken.Scope scope = token.enter();
+        try {
+            read(content);
+        } finally {
+            scope.close();
+        }
     }
 
     /**
      * Tries to read all bytes and to decrypt them from the given {@link File}.
+     * <p>
+     * The format of the payload is detected from its first bytes, see
+     * {@link PayloadFormats}. If the decrypted content would exceed the
+     * {@link #setMemoryBudget(long) memory budget}, the payload is decrypted
+     * as a stream into a temporary file instead. That file is deleted when
+     * this object is closed.
      *
      * @param file a file storing the encrypted content
      * @throws GeneralSecurityException if an error during encryption occurs
-     * @throws IOException              if an I/O error occurs
+     * @throws IOException              if an I/O error occurs or the payload
+     *                                  format is unknown
      */
     public synchronized void read(File file) throws GeneralSecurityException, IOException {
-        ensureOpen();
+        ensureWritable();
         if (!file.exists()) {
             throw new NullPointerException("File does not exists");
         }
-        zxxz.init(Cipher.DECRYPT_MODE, secretKey);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            decryptedContent = zxxz.doFinal(fis.readAllBytes());
+        long start = Metrics.start();
+        try {
+            releaseContent();
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                in.mark(PayloadFormats.HEADER_LENGTH);
+                byte[] header = in.readNBytes(PayloadFormats.HEADER_LENGTH);
+                in.reset();
+                PayloadCodec codec = PayloadFormats.detect(header, header.length);
+                if (codec == null) {
+                    throw new IOException("Unknown payload format: " + file);
+                }
+
+                if (codec.estimateDecodedLength(file.length()) > memoryBudget) {
+                    spill(codec, in);
+                } else {
+                    byte[] content = in.readAllBytes();
+                    CancellationToken.current().check();
+                    synchronized (zxxz) {
+                        decryptedContent = codec.decode(content, zxxz, secretKey);
+                    }
+                }
+                payloadCodec = codec;
+            }
+        } catch (OperationCancelledException e) {
+            releaseContent();
+            throw e;
+        } finally {
+            Metrics.stop(Operation.READ, start);
+        }
+    }
+
+    /**
+     * Reads and decrypts the given {@link File} like {@link #read(File)},
+     * until the given token is cancelled. The token is checked between chunks
+     * of the decryption.
+     *
+     * @param file  a file storing the encrypted content
+     * @param token the cancellation token
+     * @throws GeneralSecurityException    if an error during encryption occurs
+     * @throws IOException                 if an I/O error occurs or the payload
+     *                                     format is unknown
+     * @throws OperationCancelledException if the token was cancelled, this
+     *                                     object holds no content then
+     */
+    public synchronized void read(File file, CancellationToken token) throws GeneralSecurityException, IOException {
+        CancellationToken.Scope scope = token.enter();
+        try {
+            read(file);
+        } finally {
+            scope.close();
         }
     }
 
-    public void writeSelf(String destination) throws IOException {
+    /**
+     * Writes the decrypted content to the given destination file.
+     *
+     * @param destination the path of the file to create
+     * @throws IOException if the file already exists or an I/O error occurs
+     */
+    public synchronized void writeSelf(String destination) throws IOException {
         ensureOpen();
-        if (decryptedContent == null || decryptedContent.length == 0) {
+        if (getContentLength() == 0) {
             throw new IllegalStateException("No content imported yet");
         }
 
@@ -236,27 +489,260 @@ public class ShadowJar implements Closeable {
             throw new IOException("Destination file already exists");
         }
 
+        long start = Metrics.start();
         try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(decryptedContent, 0, decryptedContent.length);
+            if (spillFile != null) {
+                try (FileChannel channel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = channel.size();
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, fos.getChannel());
+                    }
+                }
+            } else {
+                fos.write(decryptedContent, 0, decryptedContent.length);
+            }
+        } finally {
+            Metrics.stop(Operation.WRITE_SELF, start);
+        }
+    }
+
+    /**
+     * Returns a read-only view of the decrypted content.
+     * <p>
+     * Content that was spilled to disk is memory mapped, so the returned
+     * buffer does not occupy heap space.
+     *
+     * @return a read-only buffer with the decrypted JAR file
+     * @throws IOException if the spilled content could not be mapped
+     */
+    public synchronized ByteBuffer getContent() throws IOException {
+        ensureOpen();
+        if (spillFile != null) {
+            try (FileChannel channel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        if (decryptedContent == null) {
+            throw new IllegalStateException("No content imported yet");
         }
+        return ByteBuffer.wrap(decryptedContent).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the codec of the last payload that was read.
+     *
+     * @return the payload format, or <code>null</code> if nothing was read yet
+     */
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * Returns the names of all entries of the decrypted JAR file.
+     *
+     * @return the entry names in the order of the central directory
+     * @throws IOException if the decrypted content is not a valid archive
+     */
+    public synchronized Set<String> getEntryNames() throws IOException {
+        ensureOpen();
+        return index().getNames();
+    }
+
+    /**
+     * Returns the decompressed content of an entry of the decrypted JAR file,
+     * like <code>classes.dex</code>.
+     * <p>
+     * The decrypted content is kept as it is, with all entries in their
+     * stored or deflated form. Entries are decompressed on request, and the
+     * most recently used ones are kept in a small cache (see
+     * {@link #setEntryCacheSize(long)}).
+     *
+     * @param name the entry name
+     * @return a read-only buffer with the entry content, or <code>null</code>
+     * if there is no such entry
+     * @throws IOException if the decrypted content is not a valid archive
+     */
+    public synchronized ByteBuffer getEntry(String name) throws IOException {
+        ensureOpen();
+        byte[] content = entryCache.get(name);
+        if (content != null) {
+            Metrics.increment(Counter.ENTRY_CACHE_HITS, 1);
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
+        ZipIndex.Entry entry = index().getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        Metrics.increment(Counter.ENTRY_CACHE_MISSES, 1);
+        long start = Metrics.start();
+        try {
+            content = index.read(entry);
+        } finally {
+            Metrics.stop(Operation.INFLATE, start);
+        }
+        if (content.length <= entryCacheSize) {
+            entryCache.put(name, content);
+            entryCacheBytes += content.length;
+            evictEntries();
+        }
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the decompressed content of an entry like
+     * {@link #getEntry(String)}, until the given token is cancelled.
+     *
+     * @param name  the entry name
+     * @param token the cancellation token
+     * @return a read-only buffer with the entry content, or <code>null</code>
+     * if there is no such entry
+     * @throws IOException                 if the decrypted content is not a valid archive
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public synchronized ByteBuffer getEntry(String name, CancellationToken token) throws IOException {
+        CancellationToken.Scope scope = token.enter();
+        try {
+            return getEntry(name);
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Sets the maximum number of bytes of decompressed entries that are
+     * cached. A size of <code>0</code> disables the cache.
+     *
+     * @param entryCacheSize the cache size in bytes
+     */
+    public synchronized void setEntryCacheSize(long entryCacheSize) {
+        if (entryCacheSize < 0) {
+            throw new IllegalArgumentException("entryCacheSize < 0");
+        }
+        this.entryCacheSize = entryCacheSize;
+        evictEntries();
+    }
+
+    /**
+     * Returns the maximum number of bytes of decompressed entries that are
+     * cached.
+     *
+     * @return the cache size in bytes
+     */
+    public synchronized long getEntryCacheSize() {
+        return entryCacheSize;
+    }
+
+    /**
+     * Returns the length of the decrypted content.
+     *
+     * @return the length in bytes, or <code>0</code> if nothing was read yet
+     */
+    public synchronized long getContentLength() {
+        if (spillFile != null) {
+            return spillFile.length();
+        }
+        return decryptedContent == null ? 0 : decryptedContent.length;
+    }
+
+    /**
+     * Returns whether the decrypted content was spilled to a temporary file.
+     *
+     * @return <code>true</code> if the content is stored on disk
+     */
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Sets the maximum number of decrypted bytes that are kept on the heap.
+     * Larger payloads read by {@link #read(File)} are spilled to disk.
+     *
+     * @param memoryBudget the budget in bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("memoryBudget < 0");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the maximum number of decrypted bytes that are kept on the heap.
+     *
+     * @return the budget in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Returns whether this object is shared by a {@link ShadowJarRegistry}.
+     * Shared objects are read-only and are closed by the registry when the
+     * last lease is released.
+     *
+     * @return <code>true</code> if this object is shared
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Wipes the decrypted content and removes all {@link SharedClass} objects,
+     * so that this object can read the next payload. The cipher, the secret
+     * key, the loaded snapshot and the memory budget are kept.
+     *
+     * @throws IllegalStateException if this object is closed or shared
+     */
+    public synchronized void reset() {
+        ensureWritable();
+        releaseContent();
+        releaseNames();
+    }
+
+    /**
+     * Returns whether this object belongs to a {@link ShadowJarPool}.
+     *
+     * @return <code>true</code> if {@link #close()} returns this object to its pool
+     */
+    public boolean isPooled() {
+        return pool != null;
     }
 
     /**
      * Closes this {@link ShadowJar} and releases any system resources
      * associated with it. If the object is already closed then invoking this
      * method has no effect.
+     * <p>
+     * An object that belongs to a {@link ShadowJarPool} is {@link #reset()}
+     * and returned to its pool instead. It must not be used afterwards.
      *
-     * @throws IOException if an I/O error occurs
+     * @throws IOException           if an I/O error occurs
+     * @throws IllegalStateException if this object is shared by a {@link ShadowJarRegistry}
      */
     @Override
-    public void close() throws IOException {
-        if (closed) {
+    public synchronized void close() throws IOException {
+        if (closed || idle) {
             return;
         }
+        if (shared) {
+            throw new IllegalStateException("A shared ShadowJar is closed by releasing its lease");
+        }
 
-        Arrays.fill(decryptedContent, (byte) 0);
-        decryptedContent = null;
+        ShadowJarPool owner = pool;
+        if (owner != null) {
+            reset();
+            idle = true;
+            if (owner.recycle(this)) {
+                return;
+            }
+            idle = false;
+        }
         closed = true;
+        releaseContent();
+        releaseNames();
+        payloadBuffer = null;
     }
 
     /**
@@ -278,13 +764,28 @@ public class ShadowJar implements Closeable {
      * @apiNote This method will not return <code>null</code> values.
      */
     public SharedClass addSharedClass(String clsName, String mthName) {
-        Entry<String, String> e = new AbstractMap.SimpleEntry<>(clsName, mthName);
-        if (sharedClassCache.containsKey(e)) {
-            return sharedClassCache.get(e);
+        Long key = Hashing.hash64(clsName, Hashing.hash64(mthName, NAME_SEED));
+        SharedClass cached = sharedClassCache.get(key);
+        if (cached != null && cached.matches(clsName, mthName)) {
+            Metrics.increment(Counter.SHARED_CLASS_HITS, 1);
+            return cached;
+        }
+
+        if (cached == null) {
+            cached = sharedClassCache.computeIfAbsent(key, k -> {
+                Metrics.increment(Counter.SHARED_CLASS_MISSES, 1);
+                SharedClass sharedClass = new SharedClass(this, clsName, mthName);
+                sharedClass.run();
+                return sharedClass;
+            });
+            if (cached.matches(clsName, mthName)) {
+                return cached;
+            }
         }
 
+        // another pair of names with the same hash is cached already
+        Metrics.increment(Counter.SHARED_CLASS_MISSES, 1);
         SharedClass sharedClass = new SharedClass(this, clsName, mthName);
-        sharedClassCache.put(e, sharedClass);
         sharedClass.run();
         return sharedClass;
     }
@@ -311,6 +812,82 @@ public class ShadowJar implements Closeable {
         return Arrays.stream(getSharedClasses());
     }
 
+    /**
+     * Loads a {@link SharedClassSnapshot} from the given {@link File}. Names
+     * stored in the snapshot are resolved without decrypting them.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the snapshot could not be mapped or was created
+     *                     for another secret key
+     */
+    public void loadSnapshot(File file) throws IOException {
+        ensureOpen();
+        snapshot = SharedClassSnapshot.map(file, secretKey);
+    }
+
+    /**
+     * Writes all known names to the given snapshot {@link File}. This includes
+     * the names of the loaded snapshot and the names of all added
+     * {@link SharedClass} objects.
+     *
+     * @param file the destination file
+     * @throws IOException if an I/O error occurs
+     */
+    public void saveSnapshot(File file) throws IOException {
+        ensureOpen();
+        SharedClassSnapshot current = snapshot;
+        Map<String, String> names = current != null ? current.toMap() : new HashMap<>();
+        for (SharedClass sharedClass : getSharedClasses()) {
+            if (sharedClass.getSharedClass() != null) {
+                names.put(sharedClass.getEncryptedClassName(), sharedClass.getSharedClass());
+            }
+            if (sharedClass.getSharedMethod() != null) {
+                names.put(sharedClass.getEncryptedMethodName(), sharedClass.getSharedMethod());
+            }
+        }
+        SharedClassSnapshot.write(file, secretKey, names);
+    }
+
+    /**
+     * Returns the loaded {@link SharedClassSnapshot}.
+     *
+     * @return the loaded snapshot, or <code>null</code> if none was loaded
+     */
+    public SharedClassSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Resolves the given encrypted name. The loaded snapshot is queried first
+     * and the name is decrypted only if it is unknown.
+     *
+     * @param name the encrypted (Base64) name
+     * @return the decrypted name
+     * @throws GeneralSecurityException if the name could not be decrypted
+     */
+    String decryptName(String name) throws GeneralSecurityException {
+        SharedClassSnapshot current = snapshot;
+        if (current != null) {
+            String value = current.lookup(name);
+            if (value != null) {
+                Metrics.increment(Counter.SNAPSHOT_HITS, 1);
+                return value;
+            }
+        }
+
+        Metrics.increment(Counter.SNAPSHOT_MISSES, 1);
+        byte[] result;
+        synchronized (zxxz) {
+            zxxz.init(Cipher.DECRYPT_MODE, secretKey);
+            result = zxxz.doFinal(name.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        String value = new String(result, StandardCharsets.UTF_8);
+        if (current != null) {
+            current.append(name, value);
+        }
+        return value;
+    }
+
     /**
      * Returns the {@link ZxxZCipher} instance.
      *
@@ -320,9 +897,155 @@ public class ShadowJar implements Closeable {
         return zxxz;
     }
 
+    /**
+     * Decodes the given payload as a stream into a new temporary file.
+     */
+    private void spill(PayloadCodec codec, InputStream payload) throws GeneralSecurityException, IOException {
+        deleteSpillFiles();
+        Path temp = Files.createTempFile("shjar", ".jar");
+        try (InputStream in = codec.decode(payload, secretKey);
+             OutputStream out = Files.newOutputStream(temp)) {
+            in.transferTo(out);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        spillFile = temp.toFile();
+    }
+
+    private ZipIndex index() throws IOException {
+        if (index == null) {
+            index = ZipIndex.parse(getContent());
+        }
+        return index;
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits its size.
+     * Evicted entries are not wiped, as they may still be in use.
+     */
+    private void evictEntries() {
+        Iterator<byte[]> iterator = entryCache.values().iterator();
+        while (entryCacheBytes > entryCacheSize && iterator.hasNext()) {
+            entryCacheBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Wipes the decrypted content and deletes the spill file.
+     */
+    private void releaseContent() {
+        payloadCodec = null;
+        index = null;
+        for (byte[] content : entryCache.values()) {
+            Arrays.fill(content, (byte) 0);
+        }
+        entryCache.clear();
+        entryCacheBytes = 0;
+
+        if (decryptedContent != null) {
+            Arrays.fill(decryptedContent, (byte) 0);
+            decryptedContent = null;
+        }
+        if (spillFile != null) {
+            if (!spillFile.delete() && spillFile.exists()) {
+                UNDELETED_SPILL_FILES.add(spillFile);
+                if (SPILL_CLEANUP_HOOK.compareAndSet(false, true)) {
+                    Runtime.getRuntime().addShutdownHook(
+                            new Thread(ShadowJar::deleteSpillFiles, "shjar-spill-cleanup"));
+                }
+            }
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Retries to delete the spill files that could not be deleted before.
+     * Unlike {@link File#deleteOnExit()}, deleted files are not remembered.
+     */
+    private static void deleteSpillFiles() {
+        UNDELETED_SPILL_FILES.removeIf(file -> file.delete() || !file.exists());
+    }
+
+    /**
+     * Removes all {@link SharedClass} objects and drops their dictionary, as
+     * a {@link NameDictionary} never removes names.
+     */
+    private void releaseNames() {
+        sharedClassCache.clear();
+        names = null;
+    }
+
+    /**
+     * Returns the dictionary for new {@link SharedClass} objects.
+     */
+    NameDictionary names() {
+        NameDictionary current = names;
+        if (current == null) {
+            synchronized (sharedClassCache) {
+                current = names;
+                if (current == null) {
+                    current = new NameDictionary();
+                    names = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Assigns this object to the given pool.
+     */
+    void attach(ShadowJarPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Takes this object out of its pool.
+     */
+    synchronized void activate() {
+        idle = false;
+    }
+
+    /**
+     * Closes an idle object that is dropped by its pool.
+     */
+    synchronized void discard() {
+        idle = false;
+        pool = null;
+        closed = true;
+        releaseContent();
+    }
+
+    /**
+     * Marks this object as shared and read-only.
+     */
+    void share() {
+        shared = true;
+    }
+
+    /**
+     * Closes a shared object after its last lease was released.
+     */
+    synchronized void release() throws IOException {
+        shared = false;
+        close();
+    }
+
+    private void ensureWritable() throws IllegalStateException {
+        ensureOpen();
+        if (shared) {
+            throw new IllegalStateException("ShadowJar is shared and read-only");
+        }
+    }
+
     private void ensureOpen() throws IllegalStateException {
         if (closed) {
             throw new IllegalStateException("ShadowJar has been closed already");
         }
+        if (idle) {
+            throw new IllegalStateException("ShadowJar has been returned to its pool");
+        }
     }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar;
+
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of reusable {@link ShadowJar} objects for one secret key.
+ * <p>
+ * Creating a {@link ShadowJar} creates a new {@link ZxxZCipher} and AES
+ * cipher. A pipeline that decrypts many payloads with the same key can take
+ * its objects from a pool instead. Closing a pooled object
+ * {@link ShadowJar#reset() resets} it and returns it to the pool, so the
+ * cipher and the decoded key are reused for the next payload:
+ * <pre>{@code
+ * ShadowJarPool pool = new ShadowJarPool(ShadowJar.DEFAULT_SECRET_KEY, 8);
+ * for (File file : files) {
+ *     try (ShadowJar jar = pool.open(file)) {
+ *         jar.writeSelf(...);
+ *     }
+ * }
+ * }</pre>
+ * At most <code>capacity</code> idle objects are kept. Objects returned to a
+ * full or closed pool are closed.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class ShadowJarPool implements Closeable {
+
+    private final String key;
+
+    private final BlockingQueue<ShadowJar> idle;
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new empty pool.
+     *
+     * @param key      the encoded secret key of all pooled objects
+     * @param capacity the maximum number of idle objects
+     * @throws IllegalArgumentException if the key could not be decoded
+     */
+    public ShadowJarPool(String key, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        ZxxZCipher.decodeXOR(key);
+        this.key = key;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Returns an idle {@link ShadowJar} or creates a new one if the pool is
+     * empty. The object is returned to this pool when it is closed.
+     *
+     * @return an empty {@link ShadowJar}
+     * @throws GeneralSecurityException if the {@link ZxxZCipher} could not be initialized
+     * @throws IllegalStateException    if this pool is closed
+     */
+    public ShadowJar acquire() throws GeneralSecurityException {
+        if (closed) {
+            throw new IllegalStateException("ShadowJarPool has been closed already");
+        }
+        ShadowJar jar = idle.poll();
+        if (jar != null) {
+            jar.activate();
+            return jar;
+        }
+
+        jar = ShadowJar.getInstance(key);
+        jar.attach(this);
+        created.incrementAndGet();
+        return jar;
+    }
+
+    /**
+     * Takes a {@link ShadowJar} from this pool and reads the content from the
+     * given {@link File}.
+     *
+     * @param src the file to read
+     * @return a pooled {@link ShadowJar} storing the decrypted content
+     * @throws GeneralSecurityException if the content could not be decrypted
+     * @throws IOException              if an error while reading occurs
+     */
+    public ShadowJar open(File src) throws GeneralSecurityException, IOException {
+        ShadowJar jar = acquire();
+        try {
+            jar.read(src);
+            return jar;
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            jar.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a {@link ShadowJar} from this pool and reads the content from the
+     * given {@link String}.
+     *
+     * @param content the encrypted jar file as a {@link String}
+     * @return a pooled {@link ShadowJar} storing the decrypted content
+     * @throws GeneralSecurityException if the content could not be decrypted
+     * @throws IOException              if the object could not be returned to the pool
+     */
+    public ShadowJar open(String content) throws GeneralSecurityException, IOException {
+        ShadowJar jar = acquire();
+        try {
+            jar.read(content);
+            return jar;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            jar.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of idle objects
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of objects created by this pool
+     */
+    public int getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Closes all idle objects. Objects that are still in use are closed when
+     * they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ShadowJar jar;
+        while ((jar = idle.poll()) != null) {
+            jar.discard();
+        }
+    }
+
+    /**
+     * Returns a reset object to this pool.
+     *
+     * @return <code>false</code> if the object should be closed instead
+     */
+    boolean recycle(ShadowJar jar) {
+        if (closed || !idle.offer(jar)) {
+            return false;
+        }
+        // close() may have drained the pool before the offer
+        return !closed || !idle.remove(jar);
+    }
+}
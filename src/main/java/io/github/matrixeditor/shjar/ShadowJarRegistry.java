@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar;
+
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A <code>ShadowJarRegistry</code> shares decrypted {@link ShadowJar} objects
+ * between all callers that open byte-identical payloads with the same key.
+ * <p>
+ * Payloads are identified by the SHA-256 digest of their encrypted content and
+ * the decoded secret key, so different encodings of the same key share a
+ * payload. The first caller decrypts the payload, every other
+ * caller receives the same read-only {@link ShadowJar}. Each caller holds a
+ * {@link Lease}, and the decrypted content is wiped when the last lease is
+ * closed:
+ * <pre>{@code
+ * ShadowJarRegistry registry = new ShadowJarRegistry();
+ * try (ShadowJarRegistry.Lease lease = registry.acquire(key, file)) {
+ *     lease.getJar().writeSelf("output.jar");
+ * }
+ * }</pre>
+ * Shared objects reject {@link ShadowJar#read(File)} and
+ * {@link ShadowJar#close()}. Adding {@link SharedClass} objects is still
+ * possible and all holders see the same classes.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class ShadowJarRegistry {
+
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    /**
+     * Returns a lease on the decrypted payload of the given file.
+     *
+     * @param key the encoded secret key
+     * @param src the file storing the encrypted payload
+     * @return a new lease on the shared {@link ShadowJar}
+     * @throws GeneralSecurityException if the payload could not be decrypted
+     * @throws IOException              if an I/O error occurs
+     */
+    public Lease acquire(String key, File src) throws GeneralSecurityException, IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(src)) {
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return acquire(new Key(digest.digest(), ZxxZCipher.decodeXOR(key)), () -> ShadowJar.open(key, src));
+    }
+
+    /**
+     * Returns a lease on the decrypted payload of the given content.
+     *
+     * @param key     the encoded secret key
+     * @param content the encrypted payload
+     * @return a new lease on the shared {@link ShadowJar}
+     * @throws GeneralSecurityException if the payload could not be decrypted
+     * @throws IOException              if an I/O error occurs
+     */
+    public Lease acquire(String key, String content) throws GeneralSecurityException, IOException {
+        byte[] digest = newDigest().digest(content.getBytes(StandardCharsets.ISO_8859_1));
+        return acquire(new Key(digest, ZxxZCipher.decodeXOR(key)), () -> ShadowJar.open(key, content));
+    }
+
+    /**
+     * Returns the number of distinct payloads that are currently held.
+     *
+     * @return the number of shared {@link ShadowJar} objects
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Lease acquire(Key id, Loader loader) throws GeneralSecurityException, IOException {
+        Entry entry;
+        boolean owner;
+        synchronized (this) {
+            entry = entries.get(id);
+            owner = entry == null;
+            if (owner) {
+                entry = new Entry();
+                entries.put(id, entry);
+            }
+            entry.references++;
+        }
+
+        // only the first caller decrypts, all others wait for its result
+        if (owner) {
+            try {
+                ShadowJar jar = loader.load();
+                jar.share();
+                entry.jar.complete(jar);
+            } catch (GeneralSecurityException | IOException | RuntimeException e) {
+                synchronized (this) {
+                    entries.remove(id, entry);
+                }
+                entry.jar.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return new Lease(id, entry, entry.jar.get());
+        } catch (InterruptedException e) {
+            release(id, entry);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for decryption", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private synchronized void release(Key id, Entry entry) throws IOException {
+        if (--entry.references == 0 && entries.remove(id, entry)) {
+            ShadowJar jar = entry.jar.getNow(null);
+            if (jar != null) {
+                jar.release();
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256");
+    }
+
+    /**
+     * A single holder's reference to a shared {@link ShadowJar}. Closing the
+     * lease more than once has no effect.
+     */
+    public final class Lease implements Closeable {
+
+        private final Key id;
+
+        private final Entry entry;
+
+        private final ShadowJar jar;
+
+        private boolean closed;
+
+        private Lease(Key id, Entry entry, ShadowJar jar) {
+            this.id = id;
+            this.entry = entry;
+            this.jar = jar;
+        }
+
+        /**
+         * Returns the shared, read-only {@link ShadowJar}.
+         *
+         * @return the shared object
+         * @throws IllegalStateException if this lease was closed
+         */
+        public ShadowJar getJar() {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Lease has been closed already");
+                }
+            }
+            return jar;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(id, entry);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Loader {
+        ShadowJar load() throws GeneralSecurityException, IOException;
+    }
+
+    private static final class Entry {
+
+        final CompletableFuture<ShadowJar> jar = new CompletableFuture<>();
+
+        int references;
+    }
+
+    private static final class Key {
+
+        private final byte[] digest;
+
+        private final byte[] secretKey;
+
+        Key(byte[] digest, byte[] secretKey) {
+            this.digest = digest;
+            this.secretKey = secretKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Arrays.equals(digest, other.digest) && Arrays.equals(secretKey, other.secretKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(digest) + Arrays.hashCode(secretKey);
+        }
+    }
+}
@@ -22,10 +22,10 @@
 
 package io.github.matrixeditor.shjar;
 
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.Operation;
+import io.github.matrixeditor.shjar.util.NameDictionary;
 
-import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 
 /**
@@ -35,6 +35,9 @@ import java.security.GeneralSecurityException;
  * Instances of this class can be retrieved by calling
  * {@link ShadowJar#addSharedClass(String, String)} with the encrypted class and
  * method names.
+ * <p>
+ * All names are kept in the {@link NameDictionary} of the jar and the getters
+ * create a new {@link String} on every call.
  *
  * @author MatrixEditor
  * @since 1.0
@@ -47,81 +50,98 @@ public final class SharedClass implements Runnable {
     private final ShadowJar jar;
 
     /**
-     * The encrypted class name.
+     * The dictionary of the jar at the time this object was created. It is
+     * kept even if the jar is reset and uses a new dictionary.
+     */
+    private final NameDictionary names;
+
+    /**
+     * The handle of the encrypted class name in the {@link NameDictionary}.
      *
      * @see #sharedClass
      */
-    private final String encryptedClassName;
+    private final int encryptedClassName;
 
     /**
-     * The encrypted method name.
+     * The handle of the encrypted method name in the {@link NameDictionary}.
      *
      * @see #sharedMethod
      */
-    private final String encryptedMethodName;
+    private final int encryptedMethodName;
 
     /**
-     * The shared class name.
+     * The handle of the shared class name, or <code>-1</code> if it is not
+     * resolved.
      * <p>
      * Usually, this field expands to <code>com.google.android.ads.zxxz</code> with
-     * the dedicated class name at the end.
+     * the dedicated class name at the end. The package prefix is stored only
+     * once for all classes.
      */
-    private String sharedClass;
+    private volatile int sharedClass = -1;
 
     /**
-     * The shared method name.
+     * The handle of the shared method name, or <code>-1</code> if it is not
+     * resolved.
      * <p>
      * Usually, this field expands to <code>a</code> as the name of the method.
      */
-    private String sharedMethod;
+    private volatile int sharedMethod = -1;
 
     SharedClass(ShadowJar jar, String encryptedClassName, String encryptedMethodName) {
         this.jar = jar;
-        this.encryptedClassName = encryptedClassName;
-        this.encryptedMethodName = encryptedMethodName;
-    }
-
-    private String decryptName(SecretKey secretKey, String name) throws GeneralSecurityException {
-        Cipher cipher = getJar().getCipherInstance();
-        cipher.init(Cipher.DECRYPT_MODE, secretKey);
-
-        byte[] result = cipher.doFinal(name.getBytes());
-        return new String(result, StandardCharsets.UTF_8);
+        this.names = jar.names();
+        this.encryptedClassName = names.store(encryptedClassName);
+        this.encryptedMethodName = names.store(encryptedMethodName);
     }
 
     @Override
     public void run() {
+        long start = Metrics.start();
         try {
-            sharedClass = decryptName(getJar().getDecodedSecret(), encryptedClassName);
-            sharedMethod = decryptName(getJar().getDecodedSecret(), encryptedMethodName);
+            sharedClass = names.intern(getJar().decryptName(getEncryptedClassName()));
+            sharedMethod = names.intern(getJar().decryptName(getEncryptedMethodName()));
         } catch (GeneralSecurityException e) {
             System.err.println(e.toString());
+        } finally {
+            Metrics.stop(Operation.SHARED_CLASS_RESOLVE, start);
         }
     }
 
     @Override
     public String toString() {
         return String.format("sClass{cls='%s' > '%s', mth='%s' > '%s'}",
-                encryptedClassName, sharedClass, encryptedMethodName, sharedMethod);
+                getEncryptedClassName(), getSharedClass(), getEncryptedMethodName(), getSharedMethod());
     }
 
     public String getSharedClass() {
-        return sharedClass;
+        return name(sharedClass);
     }
 
     public String getSharedMethod() {
-        return sharedMethod;
+        return name(sharedMethod);
     }
 
     public String getEncryptedClassName() {
-        return encryptedClassName;
+        return name(encryptedClassName);
     }
 
     public String getEncryptedMethodName() {
-        return encryptedMethodName;
+        return name(encryptedMethodName);
     }
 
     public ShadowJar getJar() {
         return jar;
     }
+
+    /**
+     * Checks whether this object was created for the given encrypted names,
+     * without creating any {@link String}.
+     */
+    boolean matches(String clsName, String mthName) {
+        return names.matches(encryptedClassName, clsName) && names.matches(encryptedMethodName, mthName);
+    }
+
+    private String name(int handle) {
+        return handle < 0 ? null : names.get(handle);
+    }
 }
@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar;
+
+import io.github.matrixeditor.shjar.util.Hashing;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A <code>SharedClassSnapshot</code> stores a precompiled mapping from encrypted
+ * to decrypted class and method names for one secret key.
+ * <p>
+ * The mapping of a known key never changes, so there is no need to decrypt the
+ * same names on every launch. A snapshot file is loaded by memory mapping it
+ * and names are resolved through a minimal perfect hash index without any
+ * cryptographic operation:
+ * <pre>{@code
+ * ShadowJar jar = ShadowJar.getInstance();
+ * jar.loadSnapshot(new File("names.snapshot"));
+ * SharedClass cls = jar.addSharedClass(encryptedClass, encryptedMethod);
+ * jar.saveSnapshot(new File("names.snapshot"));
+ * }</pre>
+ * Names that are not part of the snapshot are decrypted as usual and collected
+ * by {@link #append(String, String)}. They will be included the next time the
+ * snapshot is written.
+ * <p>
+ * The binary layout (big endian) is the following:
+ * <pre>
+ * u4   magic          'ZXNS'
+ * u2   version        1
+ * u2   flags          0
+ * u8   key id         hash of the decoded AES key
+ * u4   count          number of entries (also the number of slots)
+ * u4   buckets        number of hash buckets
+ * u4   reserved       0, ignored when reading
+ * i4[] displacements one per bucket
+ * u4[] slots          absolute offset of each entry
+ * entries:            u2 length, encrypted name, u2 length, UTF-8 name
+ * </pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class SharedClassSnapshot {
+
+    /**
+     * The magic number that starts every snapshot file.
+     */
+    public static final int MAGIC = 0x5A584E53;
+
+    /**
+     * The current version of the snapshot format.
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 28;
+
+    private static final long KEY_SEED = 0x5A78785A4B657921L;
+
+    private static final int MAX_DISPLACEMENT = 1 << 24;
+
+    /**
+     * The read-only snapshot content, either mapped or on the heap.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The hashed secret key this snapshot was created with.
+     */
+    private final long keyId;
+
+    private final int count;
+
+    private final int buckets;
+
+    /**
+     * Names that were resolved by decryption and are not stored in the
+     * snapshot yet.
+     */
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+
+    private SharedClassSnapshot(ByteBuffer buffer, long keyId) {
+        this.buffer = buffer;
+        this.keyId = keyId;
+        this.count = buffer.getInt(16);
+        this.buckets = buffer.getInt(20);
+    }
+
+    /**
+     * Creates an empty snapshot for the given {@link SecretKey}.
+     *
+     * @param key the decoded secret key
+     * @return a new snapshot without any entries
+     */
+    public static SharedClassSnapshot empty(SecretKey key) {
+        long id = keyId(key);
+        return new SharedClassSnapshot(encode(id, Collections.emptyMap()).asReadOnlyBuffer(), id);
+    }
+
+    /**
+     * Loads the snapshot from the given {@link File} by mapping it into memory.
+     *
+     * @param file the snapshot file
+     * @param key  the decoded secret key the names were encrypted with
+     * @return the mapped snapshot
+     * @throws IOException if the file could not be read, was not created
+     *                     for the given key or is corrupted
+     */
+    public static SharedClassSnapshot map(File file, SecretKey key) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size: " + channel.size());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a SharedClass snapshot");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + buffer.getShort(4));
+        }
+        long id = keyId(key);
+        if (buffer.getLong(8) != id) {
+            throw new IOException("Snapshot was created for a different key");
+        }
+
+        int count = buffer.getInt(16);
+        int buckets = buffer.getInt(20);
+        long entries = HEADER_SIZE + 4L * buckets + 4L * count;
+        if (count < 0 || buckets <= 0 || entries > buffer.capacity()) {
+            throw new IOException("Corrupted snapshot header");
+        }
+        // every slot is checked once, so lookups cannot read out of bounds
+        int slots = HEADER_SIZE + 4 * buckets;
+        for (int i = 0; i < count; i++) {
+            long offset = buffer.getInt(slots + 4 * i) & 0xFFFFFFFFL;
+            if (offset < entries || !isValidEntry(buffer, offset)) {
+                throw new IOException("Corrupted snapshot entry: " + i);
+            }
+        }
+        return new SharedClassSnapshot(buffer, id);
+    }
+
+    /**
+     * Writes the given name mapping as a snapshot to the provided {@link File}.
+     *
+     * @param file  the destination file
+     * @param key   the decoded secret key the names were encrypted with
+     * @param names the mapping from encrypted to decrypted names
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(File file, SecretKey key, Map<String, String> names) throws IOException {
+        ByteBuffer content = encode(keyId(key), names);
+        Path temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the decrypted name for the given encrypted name.
+     *
+     * @param encryptedName the encrypted (Base64) name
+     * @return the decrypted name, or <code>null</code> if the name is unknown
+     */
+    public String lookup(String encryptedName) {
+        if (count > 0) {
+            int slot = slotOf(encryptedName);
+            int offset = buffer.getInt(HEADER_SIZE + 4 * buckets + 4 * slot);
+            if (matches(offset, encryptedName)) {
+                int length = buffer.getShort(offset) & 0xFFFF;
+                return readString(offset + 2 + length, StandardCharsets.UTF_8);
+            }
+        }
+        return pending.get(encryptedName);
+    }
+
+    /**
+     * Adds a decrypted name that is not yet part of this snapshot. The name
+     * will be stored the next time this snapshot is written.
+     *
+     * @param encryptedName the encrypted (Base64) name
+     * @param name          the decrypted name
+     */
+    public void append(String encryptedName, String name) {
+        pending.putIfAbsent(encryptedName, name);
+    }
+
+    /**
+     * Writes all entries of this snapshot, including the appended ones, to
+     * the given {@link File}.
+     *
+     * @param file the destination file
+     * @param key  the decoded secret key
+     * @throws IOException if an I/O error occurs or the key does not match
+     */
+    public void writeTo(File file, SecretKey key) throws IOException {
+        if (keyId(key) != keyId) {
+            throw new IOException("Snapshot was created for a different key");
+        }
+        write(file, key, toMap());
+    }
+
+    /**
+     * Returns all entries of this snapshot as a new {@link Map}.
+     *
+     * @return the mapping from encrypted to decrypted names
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> names = new HashMap<>(pending);
+        int slots = HEADER_SIZE + 4 * buckets;
+        for (int i = 0; i < count; i++) {
+            int offset = buffer.getInt(slots + 4 * i);
+            int length = buffer.getShort(offset) & 0xFFFF;
+            names.put(readString(offset, StandardCharsets.ISO_8859_1),
+                    readString(offset + 2 + length, StandardCharsets.UTF_8));
+        }
+        return names;
+    }
+
+    /**
+     * Returns the number of entries stored in the snapshot file.
+     *
+     * @return the number of stored entries
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of appended entries that have not been written yet.
+     *
+     * @return the number of pending entries
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private int slotOf(CharSequence name) {
+        int bucket = index(Hashing.hash64(name, 0), buckets);
+        int displacement = buffer.getInt(HEADER_SIZE + 4 * bucket);
+        return index(Hashing.hash64(name, displacement), count);
+    }
+
+    private boolean matches(int offset, String name) {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + 2 + i) != (byte) name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(int offset, Charset charset) {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        byte[] value = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 2);
+        view.get(value);
+        return new String(value, charset);
+    }
+
+    /**
+     * Checks whether both names of the entry at the given offset are within
+     * the buffer.
+     */
+    private static boolean isValidEntry(ByteBuffer buffer, long offset) {
+        int capacity = buffer.capacity();
+        if (offset + 2 > capacity) {
+            return false;
+        }
+        long value = offset + 2 + (buffer.getShort((int) offset) & 0xFFFF);
+        if (value + 2 > capacity) {
+            return false;
+        }
+        return value + 2 + (buffer.getShort((int) value) & 0xFFFF) <= capacity;
+    }
+
+    private static int index(long hash, int size) {
+        return (int) ((hash >>> 1) % size);
+    }
+
+    private static long keyId(SecretKey key) {
+        return Hashing.hash64(key.getEncoded(), KEY_SEED);
+    }
+
+    /**
+     * Builds the snapshot content with a hash and displace index.
+     */
+    private static ByteBuffer encode(long keyId, Map<String, String> names) {
+        int count = names.size();
+        int buckets = Math.max(1, (count + 3) / 4);
+
+        String[] keys = names.keySet().toArray(new String[0]);
+        List<List<String>> table = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            table.add(new ArrayList<>());
+        }
+        for (String key : keys) {
+            if (key.length() > 0xFFFF) {
+                throw new IllegalArgumentException("Name too long: " + key.length());
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) > 0xFF) {
+                    throw new IllegalArgumentException("Encrypted name is not Base64: " + key);
+                }
+            }
+            table.get(index(Hashing.hash64(key, 0), buckets)).add(key);
+        }
+
+        // place the largest buckets first, they are the hardest to fit
+        Integer[] order = new Integer[buckets];
+        for (int i = 0; i < buckets; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> table.get(b).size() - table.get(a).size());
+
+        int[] displacements = new int[buckets];
+        String[] slots = new String[count];
+        int[] candidate = new int[16];
+        for (int bucket : order) {
+            List<String> members = table.get(bucket);
+            if (members.isEmpty()) {
+                break;
+            }
+            if (candidate.length < members.size()) {
+                candidate = new int[members.size()];
+            }
+
+            int displacement = 1;
+            search:
+            for (; ; displacement++) {
+                if (displacement > MAX_DISPLACEMENT) {
+                    throw new IllegalStateException("Could not build perfect hash index");
+                }
+                for (int i = 0; i < members.size(); i++) {
+                    int slot = index(Hashing.hash64(members.get(i), displacement), count);
+                    if (slots[slot] != null) {
+                        continue search;
+                    }
+                    for (int j = 0; j < i; j++) {
+                        if (candidate[j] == slot) {
+                            continue search;
+                        }
+                    }
+                    candidate[i] = slot;
+                }
+                break;
+            }
+
+            displacements[bucket] = displacement;
+            for (int i = 0; i < members.size(); i++) {
+                slots[candidate[i]] = members.get(i);
+            }
+        }
+
+        byte[][] encrypted = new byte[count][];
+        byte[][] decrypted = new byte[count][];
+        int dataSize = 0;
+        for (int i = 0; i < count; i++) {
+            encrypted[i] = slots[i].getBytes(StandardCharsets.ISO_8859_1);
+            decrypted[i] = names.get(slots[i]).getBytes(StandardCharsets.UTF_8);
+            if (decrypted[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Name too long: " + decrypted[i].length);
+            }
+            dataSize += 4 + encrypted[i].length + decrypted[i].length;
+        }
+
+        int dataOffset = HEADER_SIZE + 4 * (buckets + count);
+        ByteBuffer buffer = ByteBuffer.allocate(dataOffset + dataSize);
+        buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                .putLong(keyId).putInt(count).putInt(buckets).putInt(0);
+        for (int displacement : displacements) {
+            buffer.putInt(displacement);
+        }
+        int offset = dataOffset;
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(offset);
+            offset += 4 + encrypted[i].length + decrypted[i].length;
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putShort((short) encrypted[i].length).put(encrypted[i]);
+            buffer.putShort((short) decrypted[i].length).put(decrypted[i]);
+        }
+        return buffer.flip();
+    }
+}
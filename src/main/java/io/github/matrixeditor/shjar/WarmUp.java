@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar;
+
+import io.github.matrixeditor.shjar.crypto.ZxxZBase64;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.Operation;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Warms up the hot paths of this module before the first real payload is
+ * processed.
+ * <p>
+ * The first decryption in a fresh JVM is much slower than later ones: the JCA
+ * providers are looked up, the AES cipher is initialized for the first time
+ * and the Base64 and crypto code still runs in the interpreter. A warm-up runs
+ * representative decryptions on synthetic data under a random key through
+ * {@link ShadowJar#read(String)}, {@link ShadowJar#read(File)} (in memory and
+ * spilled), {@link ShadowJar#addSharedClass(String, String)},
+ * {@link ShadowJar#getEntry(String)}, {@link ShadowJar#writeSelf(String)} and
+ * the encryption, until the JIT compiler has compiled them:
+ * <pre>{@code
+ * // blocking
+ * WarmUp.run();
+ *
+ * // or in the background, with a readiness signal
+ * WarmUp.startInBackground().thenRun(() -> markReady());
+ * }</pre>
+ * The warm-up calls are recorded by the installed
+ * {@link io.github.matrixeditor.shjar.metrics.MetricsRecorder} like any other
+ * call, its total duration is recorded as {@link Operation#WARM_UP}.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class WarmUp {
+
+    /**
+     * The default number of iterations, enough for the C2 compiler.
+     */
+    public static final int DEFAULT_ITERATIONS = 3000;
+
+    /**
+     * How often the file based paths are used, as they are slower.
+     */
+    private static final int FILE_INTERVAL = 50;
+
+    private static final CompletableFuture<Void> READY = new CompletableFuture<>();
+
+    private static Thread thread;
+
+    private WarmUp() {
+    }
+
+    /**
+     * Runs the warm-up with {@link #DEFAULT_ITERATIONS} in the calling thread.
+     *
+     * @throws GeneralSecurityException if a cipher could not be created
+     * @throws IOException              if a temporary file could not be written
+     */
+    public static void run() throws GeneralSecurityException, IOException {
+        run(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Runs the warm-up in the calling thread and marks this module as
+     * {@link #isReady() ready} afterwards.
+     *
+     * @param iterations the number of decryptions
+     * @throws GeneralSecurityException if a cipher could not be created
+     * @throws IOException              if a temporary file could not be written
+     */
+    public static void run(int iterations) throws GeneralSecurityException, IOException {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations < 1");
+        }
+        long start = Metrics.start();
+        try {
+            exercise(iterations);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            READY.completeExceptionally(e);
+            throw e;
+        } finally {
+            Metrics.stop(Operation.WARM_UP, start);
+        }
+        READY.complete(null);
+    }
+
+    /**
+     * Starts the warm-up in a background daemon thread, unless it was started
+     * before.
+     *
+     * @return the readiness signal, see {@link #ready()}
+     */
+    public static synchronized CompletableFuture<Void> startInBackground() {
+        if (thread == null && !READY.isDone()) {
+            thread = new Thread(() -> {
+                try {
+                    run();
+                } catch (GeneralSecurityException | IOException | RuntimeException e) {
+                    // reported through READY
+                }
+            }, "shjar-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return READY;
+    }
+
+    /**
+     * Returns the readiness signal. The future completes when the first
+     * warm-up has finished, or exceptionally if it failed.
+     *
+     * @return a read-only view of the readiness signal
+     */
+    public static CompletableFuture<Void> ready() {
+        return READY.copy();
+    }
+
+    /**
+     * @return <code>true</code> if a warm-up has finished successfully
+     */
+    public static boolean isReady() {
+        return READY.isDone() && !READY.isCompletedExceptionally();
+    }
+
+    private static void exercise(int iterations) throws GeneralSecurityException, IOException {
+        byte[] rawKey = new byte[16];
+        new SecureRandom().nextBytes(rawKey);
+        String key = ZxxZCipher.encodeXOR(rawKey);
+        byte[] plain = createJar();
+
+        Path directory = Files.createTempDirectory("shjar-warm-up");
+        File encrypted = directory.resolve("payload.txt").toFile();
+        File output = directory.resolve("payload.jar").toFile();
+        try (ShadowJar jar = ShadowJar.getInstance(key);
+             ShadowJar spilled = ShadowJar.getInstance(key)) {
+            String content = new String(encrypt(jar, plain), StandardCharsets.ISO_8859_1);
+            String className = new String(encrypt(jar, "com.google.android.ads.zxxz.a".getBytes(StandardCharsets.UTF_8)),
+                    StandardCharsets.ISO_8859_1);
+            String methodName = new String(encrypt(jar, "a".getBytes(StandardCharsets.UTF_8)), StandardCharsets.ISO_8859_1);
+            Files.writeString(encrypted.toPath(), content, StandardCharsets.ISO_8859_1);
+            jar.setEntryCacheSize(0);
+            spilled.setMemoryBudget(0);
+
+            byte[] base64 = content.getBytes(StandardCharsets.ISO_8859_1);
+            byte[] decoded = new byte[ZxxZBase64.maxDecodedLength(base64.length)];
+            for (int i = 0; i < iterations; i++) {
+                ZxxZCipher.decodeXOR(key);
+                ZxxZBase64.decode(base64, 0, base64.length, decoded, 0);
+
+                jar.reset();
+                jar.read(content);
+                jar.getEntry("classes.dex");
+                jar.addSharedClass(className, methodName);
+                encrypt(jar, plain);
+
+                if (i % FILE_INTERVAL == 0) {
+                    jar.reset();
+                    jar.read(encrypted);
+                    spilled.read(encrypted);
+                    Files.deleteIfExists(output.toPath());
+                    spilled.writeSelf(output.getPath());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(encrypted.toPath());
+            Files.deleteIfExists(output.toPath());
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static byte[] encrypt(ShadowJar jar, byte[] plain) throws GeneralSecurityException {
+        Cipher cipher = jar.getCipherInstance();
+        synchronized (cipher) {
+            cipher.init(Cipher.ENCRYPT_MODE, jar.getDecodedSecret());
+            return cipher.doFinal(plain);
+        }
+    }
+
+    /**
+     * Creates a small JAR file with a manifest and a <code>classes.dex</code> entry.
+     */
+    private static byte[] createJar() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(buffer)) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.closeEntry();
+
+            byte[] dex = new byte[8192];
+            for (int i = 0; i < dex.length; i++) {
+                dex[i] = (byte) (i * 31 >> 3);
+            }
+            out.putNextEntry(new ZipEntry("classes.dex"));
+            out.write(dex);
+            out.closeEntry();
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.crypto;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A Base64 decoder specialized for ZxxZ payloads and names.
+ * <p>
+ * The decoder accepts the same input as {@link Base64#getDecoder()} and
+ * produces the same output, with one exception: line breaks (<code>\r</code>
+ * and <code>\n</code>) are skipped, so wrapped payloads can be decoded too.
+ * Unlike the JDK decoder, this class can decode into an existing buffer,
+ * which allows the AES cipher to read the decoded bytes in place.
+ * <p>
+ * Input without line breaks is passed to the JDK decoder first, because
+ * HotSpot replaces it with a vectorized intrinsic on most platforms. If that
+ * decoder rejects the input, runs of eight characters without line breaks or
+ * padding are decoded as a single <code>long</code> word (SWAR). Only the
+ * characters around line breaks and the final quantum go through the scalar
+ * path.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class ZxxZBase64 {
+
+    private static final Base64.Decoder JDK = Base64.getDecoder();
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Maps every byte value to its 6-bit value, or <code>-1</code>.
+     */
+    private static final byte[] TABLE = new byte[256];
+
+    static {
+        Arrays.fill(TABLE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private ZxxZBase64() {
+    }
+
+    /**
+     * Decodes all bytes of the given array into a new byte array.
+     *
+     * @param src the Base64 encoded input
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static byte[] decode(byte[] src) throws IllegalArgumentException {
+        try {
+            return JDK.decode(src);
+        } catch (IllegalArgumentException e) {
+            // line breaks or invalid input, handled below
+        }
+
+        byte[] dst = new byte[maxDecodedLength(src.length)];
+        int length = decode(src, 0, src.length, dst, 0);
+        return length == dst.length ? dst : Arrays.copyOf(dst, length);
+    }
+
+    /**
+     * Returns the maximum number of bytes that <code>length</code> encoded
+     * characters can decode to.
+     *
+     * @param length the number of encoded characters
+     * @return the maximum decoded length
+     */
+    public static int maxDecodedLength(int length) {
+        return (int) ((length * 3L + 3) / 4);
+    }
+
+    /**
+     * Decodes <code>length</code> bytes of the source array into the given
+     * destination array.
+     *
+     * @param src       the Base64 encoded input
+     * @param srcOffset the start offset in the input
+     * @param length    the number of input bytes
+     * @param dst       the destination array, it must provide at least
+     *                  {@link #maxDecodedLength(int)} bytes
+     * @param dstOffset the start offset in the destination array
+     * @return the number of decoded bytes
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset)
+            throws IllegalArgumentException {
+        if (srcOffset == 0 && length == src.length && dstOffset == 0) {
+            try {
+                return JDK.decode(src, dst);
+            } catch (IllegalArgumentException e) {
+                // line breaks or invalid input, handled below
+            }
+        }
+
+        int sp = srcOffset;
+        int end = srcOffset + length;
+        int dp = dstOffset;
+        int bits = 0;
+        int count = 0;
+
+        while (sp < end) {
+            if (count == 0) {
+                while (end - sp >= 8) {
+                    long word = (long) LONG.get(src, sp);
+                    int a = TABLE[(int) word & 0xFF];
+                    int b = TABLE[(int) (word >>> 8) & 0xFF];
+                    int c = TABLE[(int) (word >>> 16) & 0xFF];
+                    int d = TABLE[(int) (word >>> 24) & 0xFF];
+                    int e = TABLE[(int) (word >>> 32) & 0xFF];
+                    int f = TABLE[(int) (word >>> 40) & 0xFF];
+                    int g = TABLE[(int) (word >>> 48) & 0xFF];
+                    int h = TABLE[(int) (word >>> 56) & 0xFF];
+                    // line breaks, padding and invalid characters are all negative
+                    if ((a | b | c | d | e | f | g | h) < 0) {
+                        break;
+                    }
+
+                    int first = a << 18 | b << 12 | c << 6 | d;
+                    int second = e << 18 | f << 12 | g << 6 | h;
+                    dst[dp] = (byte) (first >> 16);
+                    dst[dp + 1] = (byte) (first >> 8);
+                    dst[dp + 2] = (byte) first;
+                    dst[dp + 3] = (byte) (second >> 16);
+                    dst[dp + 4] = (byte) (second >> 8);
+                    dst[dp + 5] = (byte) second;
+                    sp += 8;
+                    dp += 6;
+                }
+                if (sp == end) {
+                    break;
+                }
+            }
+
+            int ch = src[sp++] & 0xFF;
+            int value = TABLE[ch];
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++count == 4) {
+                    dst[dp++] = (byte) (bits >> 16);
+                    dst[dp++] = (byte) (bits >> 8);
+                    dst[dp++] = (byte) bits;
+                    bits = 0;
+                    count = 0;
+                }
+            } else if (ch == '\r' || ch == '\n') {
+                // skip line breaks of wrapped payloads
+            } else if (ch == '=') {
+                sp = skipPadding(src, sp, end, count);
+                break;
+            } else {
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(ch, 16));
+            }
+        }
+
+        if (count == 1) {
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        } else if (count == 2) {
+            dst[dp++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            dst[dp++] = (byte) (bits >> 10);
+            dst[dp++] = (byte) (bits >> 2);
+        }
+
+        while (sp < end) {
+            int ch = src[sp++];
+            if (ch != '\r' && ch != '\n') {
+                throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (sp - 1));
+            }
+        }
+        return dp - dstOffset;
+    }
+
+    /**
+     * Validates the padding after the first <code>'='</code> character.
+     *
+     * @return the position after the padding
+     */
+    private static int skipPadding(byte[] src, int sp, int end, int count) {
+        if (count == 0 || count == 1) {
+            throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+        }
+        if (count == 2) {
+            // a second '=' is required, line breaks may come in between
+            while (sp < end && (src[sp] == '\r' || src[sp] == '\n')) {
+                sp++;
+            }
+            if (sp == end || src[sp] != '=') {
+                throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+            }
+            sp++;
+        }
+        return sp;
+    }
+}
@@ -1,15 +1,40 @@
 package io.github.matrixeditor.shjar.crypto;
 
+import io.github.matrixeditor.shjar.metrics.Counter;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.Operation;
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 public class ZxxZCipher extends CipherSpi {
 
+    /**
+     * The number of bytes processed by the AES cipher between two checks of
+     * the {@link CancellationToken#current() current} cancellation token.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The largest buffer that is kept for the next decryption, larger
+     * payloads use new buffers.
+     */
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * A source of random IVs for every thread, so that concurrent encryptions
+     * do not contend on a shared {@link SecureRandom}.
+     */
+    private static final ThreadLocal<SecureRandom> IV_SOURCE = ThreadLocal.withInitial(SecureRandom::new);
+
     /**
      * A simple Object that synchronizes all incoming callers
      * when the AES-{@link Cipher} should be initialized.
@@ -39,7 +64,18 @@ public class ZxxZCipher extends CipherSpi {
     private SecretKey key;
 
     /**
-     * Decodes the given input {@link String} with a {@link Base64.Decoder} and
+     * The decoded ciphertext of the last decryption, reused by the next one.
+     */
+    private byte[] decodeBuffer;
+
+    /**
+     * The padded plaintext of the last decryption, reused by the next one
+     * and wiped after every use.
+     */
+    private byte[] outputBuffer;
+
+    /**
+     * Decodes the given input {@link String} with a {@link ZxxZBase64} decoder and
      * applies a simple XOR mechanism on the returned byte array.
      *
      * @param content the encoded key
@@ -52,7 +88,7 @@ public class ZxxZCipher extends CipherSpi {
     }
 
     /**
-     * Decodes the given input bytes with a {@link Base64.Decoder} and
+     * Decodes the given input bytes with a {@link ZxxZBase64} decoder and
      * applies a simple XOR mechanism on the returned byte array.
      *
      * @param content the encoded key
@@ -61,7 +97,7 @@ public class ZxxZCipher extends CipherSpi {
      *                                  of 32 bytes.
      */
     public static byte[] decodeXOR(byte[] content) throws IllegalArgumentException {
-        byte[] decoded = Base64.getDecoder().decode(content);
+        byte[] decoded = ZxxZBase64.decode(content);
         if (decoded.length != 32) {
             throw new IllegalArgumentException("decoded.length != 32");
         }
@@ -74,83 +110,202 @@ public class ZxxZCipher extends CipherSpi {
         return result;
     }
 
+    /**
+     * Encodes the given AES key in the format expected by {@link #decodeXOR(String)}.
+     * <p>
+     * The key is XOR'ed with <code>68</code> and stored at offset <code>4</code>
+     * of 32 random bytes, which are then Base64 encoded.
+     *
+     * @param key the AES key with a length of 16 bytes
+     * @return the encoded key
+     * @throws IllegalArgumentException if the key does not have a length of 16 bytes
+     */
+    public static String encodeXOR(byte[] key) throws IllegalArgumentException {
+        if (key.length != 16) {
+            throw new IllegalArgumentException("key.length != 16");
+        }
+
+        byte[] encoded = new byte[32];
+        IV_SOURCE.get().nextBytes(encoded);
+        for (int i = 0; i < 16; i++) {
+            encoded[i + 4] = (byte) (key[i] ^ 68);
+        }
+        return Base64.getEncoder().encodeToString(encoded);
+    }
+
+    /**
+     * Creates a new random IV from a source bound to the current thread.
+     *
+     * @return a new IV with a length of 16 bytes
+     */
+    public static byte[] generateIV() {
+        byte[] iv = new byte[16];
+        IV_SOURCE.get().nextBytes(iv);
+        return iv;
+    }
+
     /**
      * Decrypts the given bytes by applying the stored {@link SecretKey}.
      *
-     * @param bytes the encrypted content
+     * The decoded ciphertext and the padded plaintext are kept in buffers of
+     * this cipher, so only the exact result is allocated per call.
+     *
+     * @param bytes  the encrypted content
+     * @param offset the offset of the content
+     * @param length the length of the content
      * @return a byte array representing the decrypted content.
      * @throws IllegalBlockSizeException if the decoded content is smaller than 16 bytes
      */
-    private synchronized byte[] doDecrypt(byte[] bytes) throws IllegalBlockSizeException {
+    private synchronized byte[] doDecrypt(byte[] bytes, int offset, int length) throws IllegalBlockSizeException {
         byte[] result;
-        byte[] iv;
-        byte[] content;
         byte[] secretKey = key.getEncoded();
 
         if (secretKey.length != 16) {
             throw new IllegalBlockSizeException("Key.length != 16");
         }
 
+        CancellationToken token = CancellationToken.current();
+        token.check();
+        long start = Metrics.start();
+        Metrics.increment(Counter.DECRYPT_CALLS, 1);
+        Metrics.increment(Counter.DECRYPT_BYTES, length);
         try {
-            byte[] decoded = Base64.getDecoder().decode(bytes);
-            if (decoded.length <= 16) {
+            long decodeStart = Metrics.start();
+            byte[] decoded = buffer(decodeBuffer, ZxxZBase64.maxDecodedLength(length));
+            if (decoded.length <= MAX_BUFFER_SIZE) {
+                decodeBuffer = decoded;
+            }
+            int decodedLength = ZxxZBase64.decode(bytes, offset, length, decoded, 0);
+            Metrics.stop(Operation.BASE64_DECODE, decodeStart);
+            if (decodedLength <= 16) {
                 throw new BadPaddingException("Content.length <= 16");
             }
+            token.check();
 
-            ByteBuffer buffer = ByteBuffer.allocate(decoded.length);
-            buffer.put(decoded).flip();
-
-            iv = new byte[16];
-            content = new byte[decoded.length - 16];
-            buffer.get(iv);
-            buffer.get(content);
-
+            // the IV and the content are read in place, no copies needed
+            long lockStart = Metrics.start();
             synchronized (aesInitLock) {
-                aes.init(mode, key, new IvParameterSpec(iv));
-                result = getAESCipher().doFinal(content);
+                Metrics.stop(Operation.AES_INIT_LOCK_WAIT, lockStart);
+                long aesStart = Metrics.start();
+                Cipher cipher = aesCipher();
+                cipher.init(mode, key, new IvParameterSpec(decoded, 0, 16));
+                byte[] output = buffer(outputBuffer, cipher.getOutputSize(decodedLength - 16));
+                if (output.length <= MAX_BUFFER_SIZE) {
+                    outputBuffer = output;
+                }
+                result = process(cipher, decoded, 16, decodedLength - 16, new byte[0], output, token);
+                Metrics.stop(Operation.AES, aesStart);
             }
             return result;
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException(e);
+        } finally {
+            Metrics.stop(Operation.DECRYPT, start);
         }
     }
 
     /**
      * Encrypts the given bytes by applying the stored {@link SecretKey}.
      *
-     * @param bytes the plain content
+     * @param bytes  the plain content
+     * @param offset the offset of the content
+     * @param length the length of the content
      * @return a byte array representing the encrypted content.
      * @throws IllegalBlockSizeException if the key length is not 16 bytes
      */
-    private synchronized byte[] doEncrypt(byte[] bytes) throws IllegalBlockSizeException {
-        byte[] result;
-        byte[] iv;
+    private synchronized byte[] doEncrypt(byte[] bytes, int offset, int length) throws IllegalBlockSizeException {
         byte[] secretKey = key.getEncoded();
 
         if (secretKey.length != 16) {
             throw new IllegalBlockSizeException("Key.length != 16");
         }
 
+        CancellationToken token = CancellationToken.current();
+        token.check();
+        long start = Metrics.start();
+        Metrics.increment(Counter.ENCRYPT_CALLS, 1);
+        Metrics.increment(Counter.ENCRYPT_BYTES, length);
         try {
+            // the IV is created here instead of being read back from the
+            // shared AES cipher, and the ciphertext is written behind it
+            byte[] iv = generateIV();
+            byte[] result;
+            long lockStart = Metrics.start();
             synchronized (aesInitLock) {
-                getAESCipher().init(mode, key, (SecureRandom) null);
-                result = getAESCipher().doFinal(bytes);
-                iv = engineGetIV();
+                Metrics.stop(Operation.AES_INIT_LOCK_WAIT, lockStart);
+                long aesStart = Metrics.start();
+                Cipher cipher = aesCipher();
+                cipher.init(mode, key, new IvParameterSpec(iv));
+                result = process(cipher, bytes, offset, length, iv, null, token);
+                Metrics.stop(Operation.AES, aesStart);
             }
 
-            int len = result.length + iv.length;
-            ByteBuffer buffer = ByteBuffer.allocate(len);
-            buffer.put(iv);
-            buffer.put(result).flip();
-
-            byte[] finalResult = new byte[len];
-            buffer.get(finalResult);
-            return Base64.getEncoder().encode(finalResult);
+            long encodeStart = Metrics.start();
+            byte[] encoded = Base64.getEncoder().encode(result);
+            Metrics.stop(Operation.BASE64_ENCODE, encodeStart);
+            return encoded;
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException(e);
+        } finally {
+            Metrics.stop(Operation.ENCRYPT, start);
         }
     }
 
+    /**
+     * Runs the initialized AES cipher over the given input in chunks and
+     * checks the cancellation token between them.
+     *
+     * @param cipher the initialized AES cipher
+     * @param input  the input buffer
+     * @param offset the offset of the input
+     * @param length the length of the input
+     * @param prefix bytes to put in front of the result, like the IV
+     * @param buffer a buffer for the output of the cipher that is wiped
+     *               afterwards, or <code>null</code>
+     * @param token  the cancellation token
+     * @return the prefix followed by the output of the cipher
+     * @throws OperationCancelledException if the token was cancelled, the
+     *                                     partial output is wiped
+     */
+    private static byte[] process(Cipher cipher, byte[] input, int offset, int length, byte[] prefix,
+                                  byte[] buffer, CancellationToken token) throws GeneralSecurityException {
+        byte[] result = buffer != null ? buffer : new byte[prefix.length + cipher.getOutputSize(length)];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        int position = prefix.length;
+        try {
+            int end = offset + length;
+            // only the last block is passed to doFinal, which copies its
+            // whole input to remove the padding
+            int last = Math.max(offset, end - cipher.getBlockSize());
+            while (offset < last) {
+                int chunk = Math.min(CHUNK_SIZE, last - offset);
+                position += cipher.update(input, offset, chunk, result, position);
+                offset += chunk;
+                token.check();
+            }
+            position += cipher.doFinal(input, offset, end - offset, result, position);
+        } catch (OperationCancelledException | GeneralSecurityException e) {
+            Arrays.fill(result, (byte) 0);
+            throw e;
+        }
+
+        if (position == result.length && result != buffer) {
+            return result;
+        }
+        // the decrypted content is shorter by its padding
+        byte[] trimmed = Arrays.copyOf(result, position);
+        Arrays.fill(result, (byte) 0);
+        return trimmed;
+    }
+
+    /**
+     * Returns the given buffer if it has at least the given length, or a new
+     * buffer otherwise.
+     */
+    private static byte[] buffer(byte[] buffer, int length) {
+        return buffer != null && buffer.length >= length ? buffer : new byte[length];
+    }
+
     // CipherSpi implementation
 
     /**
@@ -185,7 +340,7 @@ public class ZxxZCipher extends CipherSpi {
      */
     @Override
     protected int engineGetBlockSize() {
-        return getAESCipher().getBlockSize();
+        return aesCipher().getBlockSize();
     }
 
     /**
@@ -206,7 +361,7 @@ public class ZxxZCipher extends CipherSpi {
      */
     @Override
     protected int engineGetOutputSize(int inputLen) {
-        return getAESCipher().getOutputSize(inputLen);
+        return aesCipher().getOutputSize(inputLen);
     }
 
     /**
@@ -221,7 +376,7 @@ public class ZxxZCipher extends CipherSpi {
      */
     @Override
     protected byte[] engineGetIV() {
-        return getAESCipher().getIV();
+        return aesCipher().getIV();
     }
 
     /**
@@ -278,7 +433,9 @@ public class ZxxZCipher extends CipherSpi {
         }
 
         try {
+            long lockStart = Metrics.start();
             synchronized (aesWriteLock) {
+                Metrics.stop(Operation.AES_WRITE_LOCK_WAIT, lockStart);
                 if (this.aes == null) {
                     this.aes = Cipher.getInstance("AES/CBC/PKCS5Padding");
                 }
@@ -440,10 +597,10 @@ public class ZxxZCipher extends CipherSpi {
     @Override
     protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen) throws IllegalBlockSizeException, BadPaddingException {
         if (mode == Cipher.DECRYPT_MODE) {
-            return doDecrypt(input);
+            return doDecrypt(input, inputOffset, inputLen);
         }
         else if (mode == Cipher.ENCRYPT_MODE) {
-            return doEncrypt(input);
+            return doEncrypt(input, inputOffset, inputLen);
         }
 
         return new byte[0];
@@ -505,6 +662,22 @@ public class ZxxZCipher extends CipherSpi {
      * @return the configured AES-{@link Cipher} instance.
      */
     public Cipher getAESCipher() {
+        long lockStart = Metrics.start();
+        synchronized (aesWriteLock) {
+            Metrics.stop(Operation.AES_WRITE_LOCK_WAIT, lockStart);
+            return aes;
+        }
+    }
+
+    /**
+     * Returns the AES-{@link Cipher} instance for internal use. Unlike
+     * {@link #getAESCipher()}, the lock wait is not recorded, so that
+     * {@link Operation#AES_WRITE_LOCK_WAIT} only counts the waits of
+     * <code>engineInit</code> and of external callers.
+     *
+     * @return the configured AES-{@link Cipher} instance.
+     */
+    private Cipher aesCipher() {
         synchronized (aesWriteLock) {
             return aes;
         }
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.crypto;
+
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * An {@link InputStream} that decrypts a ZxxZ payload while it is read.
+ * <p>
+ * The source stream provides the Base64 encoded payload (the IV followed by
+ * the AES/CBC encrypted content) and this stream returns the plain bytes. Line
+ * breaks in the encoded payload are skipped, like in {@link ZxxZBase64}. Only
+ * a small, fixed amount of memory is used regardless of the payload size:
+ * <pre>{@code
+ * try (InputStream in = new ZxxZInputStream(new FileInputStream("shadow.txt"), key)) {
+ *     in.transferTo(out);
+ * }
+ * }</pre>
+ * This is the streaming counterpart of the decryption in {@link ZxxZCipher}.
+ * <p>
+ * A {@link CancellationToken} is checked before every chunk. If it was
+ * cancelled, the buffers are wiped, the stream is closed and an
+ * {@link OperationCancelledException} is thrown.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public class ZxxZInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The decoded (binary) payload.
+     */
+    private final InputStream source;
+
+    private final Cipher aes;
+
+    private final CancellationToken token;
+
+    private final byte[] input = new byte[CHUNK_SIZE];
+
+    private final byte[] output = new byte[CHUNK_SIZE + 32];
+
+    private int position;
+
+    private int limit;
+
+    private boolean finished;
+
+    /**
+     * Creates a new stream that decrypts the Base64 encoded payload of the
+     * given source with the given key. The stream uses the
+     * {@link CancellationToken#current() current} cancellation token of the
+     * calling thread.
+     *
+     * @param source the Base64 encoded payload
+     * @param key    the decoded AES key
+     * @throws IOException              if the IV could not be read
+     * @throws GeneralSecurityException if the AES cipher could not be initialized
+     */
+    public ZxxZInputStream(InputStream source, SecretKey key) throws IOException, GeneralSecurityException {
+        this(source, key, CancellationToken.current());
+    }
+
+    /**
+     * Creates a new stream that decrypts the Base64 encoded payload of the
+     * given source with the given key, until the given token is cancelled.
+     *
+     * @param source the Base64 encoded payload
+     * @param key    the decoded AES key
+     * @param token  the cancellation token
+     * @throws IOException              if the IV could not be read
+     * @throws GeneralSecurityException if the AES cipher could not be initialized
+     */
+    public ZxxZInputStream(InputStream source, SecretKey key, CancellationToken token)
+            throws IOException, GeneralSecurityException {
+        this.token = token;
+        this.source = Base64.getDecoder().wrap(new LineBreakFilter(source));
+        byte[] iv = this.source.readNBytes(16);
+        if (iv.length != 16) {
+            throw new EOFException("Content.length <= 16");
+        }
+        this.aes = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        this.aes.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return output[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, limit - position);
+        System.arraycopy(output, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(input, (byte) 0);
+        Arrays.fill(output, (byte) 0);
+        position = limit = 0;
+        finished = true;
+        source.close();
+    }
+
+    /**
+     * Decrypts the next chunk if all buffered bytes were consumed.
+     *
+     * @return <code>false</code> if the end of the payload was reached
+     */
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            if (finished) {
+                return false;
+            }
+
+            position = 0;
+            try {
+                token.check();
+                int count = source.read(input, 0, input.length);
+                if (count < 0) {
+                    finished = true;
+                    limit = aes.doFinal(output, 0);
+                } else {
+                    limit = aes.update(input, 0, count, output, 0);
+                }
+            } catch (BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
+                throw new IOException("Could not decrypt payload", e);
+            } catch (OperationCancelledException e) {
+                close();
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the line breaks of a wrapped Base64 payload, which the JDK
+     * decoder rejects.
+     */
+    private static final class LineBreakFilter extends FilterInputStream {
+
+        LineBreakFilter(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            do {
+                b = in.read();
+            } while (b == '\r' || b == '\n');
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count;
+            do {
+                int read = in.read(b, off, len);
+                if (read < 0) {
+                    return -1;
+                }
+                count = 0;
+                for (int i = off; i < off + read; i++) {
+                    if (b[i] != '\r' && b[i] != '\n') {
+                        b[off + count++] = b[i];
+                    }
+                }
+            } while (count == 0);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && read() >= 0) {
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.crypto;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * An {@link OutputStream} that encrypts everything written to it into a ZxxZ
+ * payload.
+ * <p>
+ * The random IV is written as soon as the stream is created. After that the
+ * plain bytes are encrypted with AES/CBC and Base64 encoded in chunks, and the
+ * final padding is written on {@link #close()}. The target receives the same
+ * format as produced by {@link ZxxZCipher}, but the memory use does not depend
+ * on the payload size. A patched JAR file can be repacked directly:
+ * <pre>{@code
+ * try (ZipOutputStream zip = new ZipOutputStream(
+ *         new ZxxZOutputStream(new FileOutputStream("shadow.txt"), key))) {
+ *     zip.putNextEntry(new ZipEntry("classes.dex"));
+ *     // ...
+ * }
+ * }</pre>
+ * The stream can be used as a {@link WritableByteChannel} as well. Closing
+ * this stream closes the target.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public class ZxxZOutputStream extends OutputStream implements WritableByteChannel {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The Base64 encoding view of the target stream.
+     */
+    private final OutputStream target;
+
+    private final Cipher aes;
+
+    private final byte[] input = new byte[CHUNK_SIZE];
+
+    private final byte[] output = new byte[CHUNK_SIZE + 16];
+
+    private boolean closed;
+
+    /**
+     * Creates a new stream that writes the encrypted and Base64 encoded payload
+     * to the given target.
+     *
+     * @param target the stream receiving the Base64 encoded payload
+     * @param key    the decoded AES key
+     * @throws IOException              if the IV could not be written
+     * @throws GeneralSecurityException if the AES cipher could not be initialized
+     */
+    public ZxxZOutputStream(OutputStream target, SecretKey key) throws IOException, GeneralSecurityException {
+        byte[] iv = ZxxZCipher.generateIV();
+        this.aes = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        this.aes.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        this.target = Base64.getEncoder().wrap(target);
+        this.target.write(iv);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        input[0] = (byte) b;
+        write(input, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int count = Math.min(len, CHUNK_SIZE);
+            try {
+                target.write(output, 0, aes.update(b, off, count, output, 0));
+            } catch (ShortBufferException e) {
+                throw new IOException(e);
+            }
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (src.hasArray()) {
+            write(src.array(), src.arrayOffset() + src.position(), length);
+            src.position(src.limit());
+            return length;
+        }
+
+        while (src.hasRemaining()) {
+            int count = Math.min(src.remaining(), CHUNK_SIZE);
+            src.get(input, 0, count);
+            write(input, 0, count);
+        }
+        return length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        target.flush();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Writes the final padded block, finishes the Base64 encoding and closes
+     * the target stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try (OutputStream out = target) {
+            out.write(output, 0, aes.doFinal(output, 0));
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new IOException("Could not finish payload", e);
+        } finally {
+            Arrays.fill(input, (byte) 0);
+            Arrays.fill(output, (byte) 0);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+}
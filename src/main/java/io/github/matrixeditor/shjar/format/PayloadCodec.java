@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.format;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * A codec for one version of the hidden JAR payload format.
+ * <p>
+ * Codecs are selected by {@link PayloadFormats#detect(byte[], int)}, which
+ * only looks at the first {@link PayloadFormats#HEADER_LENGTH} bytes of a
+ * payload. A codec must therefore be able to recognize its format from the
+ * header alone, without trying to decrypt it.
+ * <p>
+ * Additional codecs are registered with
+ * {@link PayloadFormats#register(PayloadCodec)} or through the
+ * {@link java.util.ServiceLoader} mechanism by listing them in a
+ * <code>META-INF/services/io.github.matrixeditor.shjar.format.PayloadCodec</code>
+ * file.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return a short name of the format, like <code>zxxz-v1</code>
+     */
+    String getName();
+
+    /**
+     * Checks whether a payload starting with the given header is stored in
+     * this format. This method must not decrypt anything.
+     *
+     * @param header the first bytes of the payload
+     * @param length the number of valid bytes, at most
+     *               {@link PayloadFormats#HEADER_LENGTH} and less only for
+     *               shorter payloads
+     * @return <code>true</code> if this codec can decode the payload
+     */
+    boolean matches(byte[] header, int length);
+
+    /**
+     * Estimates the size of the decoded JAR file. The estimate is used to
+     * decide whether a payload is decoded into memory or spilled to disk.
+     *
+     * @param length the size of the payload
+     * @return the estimated size of the decoded content
+     */
+    long estimateDecodedLength(long length);
+
+    /**
+     * Decodes a payload that is stored in memory.
+     *
+     * @param payload the complete payload
+     * @param cipher  the ZxxZ cipher of the caller, which may be used by the
+     *                codec; the caller holds its monitor
+     * @param key     the decoded AES key
+     * @return the decoded JAR file
+     * @throws GeneralSecurityException if the payload could not be decrypted
+     */
+    byte[] decode(byte[] payload, Cipher cipher, SecretKey key) throws GeneralSecurityException;
+
+    /**
+     * Decodes the first <code>length</code> bytes of a payload that is
+     * stored in a larger, reused buffer. The returned array must not be the
+     * given buffer. The default implementation copies the payload.
+     *
+     * @param payload the buffer with the payload
+     * @param length  the length of the payload
+     * @param cipher  the ZxxZ cipher of the caller, which may be used by the
+     *                codec; the caller holds its monitor
+     * @param key     the decoded AES key
+     * @return the decoded JAR file
+     * @throws GeneralSecurityException if the payload could not be decrypted
+     */
+    default byte[] decode(byte[] payload, int length, Cipher cipher, SecretKey key) throws GeneralSecurityException {
+        return decode(Arrays.copyOf(payload, length), cipher, key);
+    }
+
+    /**
+     * Decodes a payload as a stream.
+     *
+     * @param payload the payload, positioned at its first byte
+     * @param key     the decoded AES key
+     * @return a stream of the decoded JAR file
+     * @throws IOException              if the payload could not be read
+     * @throws GeneralSecurityException if the decryption could not be initialized
+     */
+    InputStream decode(InputStream payload, SecretKey key) throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The registry of all known {@link PayloadCodec}s.
+ * <p>
+ * The format of a payload is detected from its first
+ * {@link #HEADER_LENGTH} bytes. The codecs are asked in the following
+ * order, and the first one that matches is used:
+ * <ol>
+ *     <li>codecs added by {@link #register(PayloadCodec)}, the most recent first</li>
+ *     <li>codecs found by the {@link ServiceLoader}</li>
+ *     <li>{@link ZxxZV1Codec}, which matches any Base64 text</li>
+ * </ol>
+ * New formats with a distinctive header are therefore detected before the
+ * generic Base64 check of the original format.
+ * <p>
+ * Unencrypted JAR files are not accepted by default. The {@link #PLAIN_JAR}
+ * codec has to be registered explicitly to read them with
+ * {@link io.github.matrixeditor.shjar.ShadowJar#read(java.io.File)}.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class PayloadFormats {
+
+    /**
+     * The number of bytes a codec may inspect.
+     */
+    public static final int HEADER_LENGTH = 64;
+
+    /**
+     * The codec of the original format.
+     */
+    public static final PayloadCodec ZXXZ_V1 = new ZxxZV1Codec();
+
+    /**
+     * The codec for JAR files that are not encrypted. It is only used after
+     * it was passed to {@link #register(PayloadCodec)}.
+     */
+    public static final PayloadCodec PLAIN_JAR = new PlainJarCodec();
+
+    private static final List<PayloadCodec> REGISTERED = new CopyOnWriteArrayList<>();
+
+    private static final List<PayloadCodec> SERVICES;
+
+    static {
+        List<PayloadCodec> services = new ArrayList<>();
+        for (PayloadCodec codec : ServiceLoader.load(PayloadCodec.class, PayloadFormats.class.getClassLoader())) {
+            services.add(codec);
+        }
+        SERVICES = Collections.unmodifiableList(services);
+    }
+
+    private PayloadFormats() {
+    }
+
+    /**
+     * Registers a new codec. It takes precedence over all codecs registered
+     * before and over the {@link ServiceLoader} codecs.
+     *
+     * @param codec the codec to add
+     */
+    public static void register(PayloadCodec codec) {
+        REGISTERED.add(0, Objects.requireNonNull(codec));
+    }
+
+    /**
+     * Removes a codec added by {@link #register(PayloadCodec)}.
+     *
+     * @param codec the codec to remove
+     */
+    public static void unregister(PayloadCodec codec) {
+        REGISTERED.remove(codec);
+    }
+
+    /**
+     * @return all codecs in the order they are asked
+     */
+    public static List<PayloadCodec> getCodecs() {
+        List<PayloadCodec> codecs = new ArrayList<>(REGISTERED.size() + SERVICES.size() + 1);
+        codecs.addAll(REGISTERED);
+        codecs.addAll(SERVICES);
+        codecs.add(ZXXZ_V1);
+        return codecs;
+    }
+
+    /**
+     * Detects the format of a payload from its first bytes.
+     *
+     * @param header the first bytes of the payload
+     * @param length the number of valid bytes, only the first
+     *               {@link #HEADER_LENGTH} are inspected
+     * @return the matching codec, or <code>null</code> if the format is unknown
+     */
+    public static PayloadCodec detect(byte[] header, int length) {
+        int count = Math.min(Math.min(length, header.length), HEADER_LENGTH);
+        for (PayloadCodec codec : REGISTERED) {
+            if (codec.matches(header, count)) {
+                return codec;
+            }
+        }
+        for (PayloadCodec codec : SERVICES) {
+            if (codec.matches(header, count)) {
+                return codec;
+            }
+        }
+        return ZXXZ_V1.matches(header, count) ? ZXXZ_V1 : null;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.format;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.InputStream;
+
+/**
+ * A JAR file that is not encrypted at all, like the decrypted
+ * <code>cache/1489418796403.jar</code>. It is recognized by the ZIP local
+ * file header signature <code>PK\3\4</code> and returned as it is.
+ * <p>
+ * This codec is not detected by default, see
+ * {@link PayloadFormats#PLAIN_JAR}. Binary payloads cannot be passed as a
+ * {@link String}, so {@link io.github.matrixeditor.shjar.ShadowJar#read(String)}
+ * rejects it.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class PlainJarCodec implements PayloadCodec {
+
+    @Override
+    public String getName() {
+        return "jar";
+    }
+
+    @Override
+    public boolean matches(byte[] header, int length) {
+        return length >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4;
+    }
+
+    @Override
+    public long estimateDecodedLength(long length) {
+        return length;
+    }
+
+    @Override
+    public byte[] decode(byte[] payload, Cipher cipher, SecretKey key) {
+        return payload;
+    }
+
+    @Override
+    public InputStream decode(InputStream payload, SecretKey key) {
+        return payload;
+    }
+}
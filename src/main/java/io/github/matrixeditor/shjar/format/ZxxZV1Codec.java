@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.format;
+
+import io.github.matrixeditor.shjar.crypto.ZxxZInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * The original ZxxZ format, as found in <code>shadow.txt</code>: the Base64
+ * encoding of a 16 byte IV followed by the AES/CBC encrypted JAR file.
+ * <p>
+ * The header only contains Base64 characters (line breaks are allowed) and
+ * at least a complete encoded IV.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class ZxxZV1Codec implements PayloadCodec {
+
+    /**
+     * The number of Base64 characters of the IV.
+     */
+    private static final int MIN_LENGTH = 24;
+
+    private static final boolean[] BASE64 = new boolean[256];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            BASE64[c] = true;
+            BASE64[Character.toLowerCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            BASE64[c] = true;
+        }
+        BASE64['+'] = true;
+        BASE64['/'] = true;
+    }
+
+    @Override
+    public String getName() {
+        return "zxxz-v1";
+    }
+
+    @Override
+    public boolean matches(byte[] header, int length) {
+        int count = 0;
+        boolean padding = false;
+        for (int i = 0; i < length; i++) {
+            int b = header[i] & 0xFF;
+            if (b == '\r' || b == '\n') {
+                continue;
+            }
+            if (b == '=') {
+                padding = true;
+            } else if (!BASE64[b] || padding) {
+                return false;
+            }
+            count++;
+        }
+        return count >= MIN_LENGTH;
+    }
+
+    @Override
+    public long estimateDecodedLength(long length) {
+        // every 4 Base64 characters store 3 bytes, the first 16 are the IV
+        return Math.max(0, length / 4 * 3 - 16);
+    }
+
+    @Override
+    public byte[] decode(byte[] payload, Cipher cipher, SecretKey key) throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        return cipher.doFinal(payload);
+    }
+
+    @Override
+    public byte[] decode(byte[] payload, int length, Cipher cipher, SecretKey key) throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        return cipher.doFinal(payload, 0, length);
+    }
+
+    @Override
+    public InputStream decode(InputStream payload, SecretKey key) throws IOException, GeneralSecurityException {
+        return new ZxxZInputStream(payload, key);
+    }
+}
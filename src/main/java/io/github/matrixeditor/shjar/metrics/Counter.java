@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.metrics;
+
+/**
+ * The event counters of this module.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ * @see MetricsRecorder#increment(Counter, long)
+ */
+public enum Counter {
+
+    /**
+     * Number of decryptions in <code>ZxxZCipher</code>.
+     */
+    DECRYPT_CALLS,
+
+    /**
+     * Number of encrypted (Base64) bytes passed to the decryption.
+     */
+    DECRYPT_BYTES,
+
+    /**
+     * Number of encryptions in <code>ZxxZCipher</code>.
+     */
+    ENCRYPT_CALLS,
+
+    /**
+     * Number of plain bytes passed to the encryption.
+     */
+    ENCRYPT_BYTES,
+
+    /**
+     * <code>addSharedClass</code> calls answered by the cache.
+     */
+    SHARED_CLASS_HITS,
+
+    /**
+     * <code>addSharedClass</code> calls that created a new <code>SharedClass</code>.
+     */
+    SHARED_CLASS_MISSES,
+
+    /**
+     * Names resolved through a <code>SharedClassSnapshot</code>.
+     */
+    SNAPSHOT_HITS,
+
+    /**
+     * Names that had to be decrypted.
+     */
+    SNAPSHOT_MISSES,
+
+    /**
+     * <code>ShadowJar.getEntry</code> calls answered by the entry cache.
+     */
+    ENTRY_CACHE_HITS,
+
+    /**
+     * <code>ShadowJar.getEntry</code> calls that decompressed the entry.
+     */
+    ENTRY_CACHE_MISSES,
+
+    /**
+     * Operations stopped by a <code>CancellationToken</code>.
+     */
+    CANCELLATIONS
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.metrics;
+
+/**
+ * An immutable view of the values recorded for one {@link Operation} by a
+ * {@link SamplingMetricsRecorder}.
+ * <p>
+ * The buckets use the log-linear layout of an HDR histogram: values below
+ * <code>32</code> have a bucket of their own, and every larger power of two
+ * <code>[2^e, 2^(e+1))</code> is split into 32 linear sub-buckets. The
+ * reported percentiles are therefore accurate to about 3% over the whole
+ * range, from nanoseconds up to the maximum of roughly two hours.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class HistogramSnapshot {
+
+    static final int SUB_BUCKET_BITS = 5;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The highest exponent with its own sub-buckets. Larger values are
+     * counted in the last bucket.
+     */
+    static final int MAX_EXPONENT = 42;
+
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long total;
+
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long total, long max) {
+        this.counts = counts;
+        this.total = total;
+        this.max = max;
+        long count = 0;
+        for (long value : counts) {
+            count += value;
+        }
+        this.count = count;
+    }
+
+    /**
+     * Returns the bucket of the given value.
+     *
+     * @param value a value, at least <code>0</code>
+     * @return the index of the bucket
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0L, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest value that is counted in the given bucket.
+     *
+     * @param index the index of the bucket
+     * @return the upper bound of the bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the maximum in nanoseconds, or <code>0</code> if nothing was
+     * recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the mean of all recorded values.
+     *
+     * @return the mean in nanoseconds, or <code>0</code> if nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given quantile.
+     *
+     * @param quantile the quantile, between <code>0</code> and <code>1</code>
+     * @return the estimated value in nanoseconds
+     */
+    public long getValueAtQuantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the values that were recorded after the given snapshot of the
+     * same operation was taken.
+     * <p>
+     * The maximum of the interval is not tracked separately, it is estimated
+     * with the upper bound of the highest non-empty bucket.
+     *
+     * @param earlier an older snapshot of the same recorder and operation
+     * @return the values recorded in between
+     */
+    public HistogramSnapshot minus(HistogramSnapshot earlier) {
+        long[] delta = new long[BUCKETS];
+        long max = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            delta[i] = counts[i] - earlier.counts[i];
+            if (delta[i] > 0) {
+                max = Math.min(highestValue(i), this.max);
+            }
+        }
+        return new HistogramSnapshot(delta, total - earlier.total, max);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.0fns, p50<=%dns, p99<=%dns, max=%dns",
+                count, getMean(), getValueAtQuantile(0.5), getValueAtQuantile(0.99), max);
+    }
+}
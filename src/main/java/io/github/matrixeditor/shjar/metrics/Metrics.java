@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.metrics;
+
+/**
+ * Static entry point for the instrumentation of this module.
+ * <p>
+ * Metrics are disabled by default. In that case {@link #start()} does not read
+ * the clock and every other method returns after a single volatile read, so
+ * the instrumented code runs at (almost) full speed. Installing a recorder
+ * enables the measurements:
+ * <pre>{@code
+ * SimpleMetricsRecorder recorder = new SimpleMetricsRecorder();
+ * Metrics.setRecorder(recorder);
+ * // ...
+ * System.out.println(recorder);
+ * }</pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class Metrics {
+
+    private static volatile MetricsRecorder recorder = MetricsRecorder.NOOP;
+
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    /**
+     * Installs the given {@link MetricsRecorder}. Passing <code>null</code> or
+     * {@link MetricsRecorder#NOOP} disables the instrumentation.
+     *
+     * @param recorder the new recorder
+     */
+    public static synchronized void setRecorder(MetricsRecorder recorder) {
+        Metrics.recorder = recorder == null ? MetricsRecorder.NOOP : recorder;
+        enabled = Metrics.recorder != MetricsRecorder.NOOP;
+    }
+
+    /**
+     * Returns the installed {@link MetricsRecorder}.
+     *
+     * @return the installed recorder, never <code>null</code>
+     */
+    public static MetricsRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Returns whether a recorder is installed.
+     *
+     * @return <code>true</code> if metrics are recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a measurement.
+     *
+     * @return the current time in nanoseconds, or <code>0</code> if metrics
+     * are disabled or the recorder skips this measurement
+     * @see MetricsRecorder#sample()
+     */
+    public static long start() {
+        return enabled && recorder.sample() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Finishes a measurement started with {@link #start()}.
+     *
+     * @param operation the timed operation
+     * @param start     the value returned by {@link #start()}
+     */
+    public static void stop(Operation operation, long start) {
+        if (start != 0L && enabled) {
+            recorder.record(operation, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Adds the given delta to a counter.
+     *
+     * @param counter the counter
+     * @param delta   the value to add
+     */
+    public static void increment(Counter counter, long delta) {
+        if (enabled) {
+            recorder.increment(counter, delta);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.metrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes the latency distributions and counters of a
+ * {@link SamplingMetricsRecorder} to a {@link Sink}, like a rolling file or a
+ * local HTTP endpoint.
+ * <p>
+ * Every export produces one JSON object per line: one for each operation that
+ * was recorded since the last export, with the number of samples and the
+ * percentiles of that interval, and one with the current (cumulative) values
+ * of all counters:
+ * <pre>
+ * {"time":1697712000000,"operation":"READ","sampleRate":1,"samples":12,"mean":1534211,"p50":1507327,...}
+ * {"time":1697712000000,"counters":{"DECRYPT_CALLS":12,"DECRYPT_BYTES":4810752,...}}
+ * </pre>
+ * If the sink fails, the values are kept and sent with the next export.
+ * <pre>{@code
+ * SamplingMetricsRecorder recorder = new SamplingMetricsRecorder();
+ * Metrics.setRecorder(recorder);
+ * MetricsExporter exporter = new MetricsExporter(recorder,
+ *         MetricsExporter.rollingFile(new File("shjar-metrics.jsonl"), 16 << 20, 4));
+ * exporter.start(10, TimeUnit.SECONDS);
+ * }</pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public class MetricsExporter implements Closeable {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final SamplingMetricsRecorder recorder;
+
+    private final Sink sink;
+
+    private final Map<Operation, HistogramSnapshot> exported = new EnumMap<>(Operation.class);
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile Exception lastFailure;
+
+    /**
+     * Creates a new exporter. Nothing is exported before {@link #start(long, TimeUnit)}
+     * or {@link #export()} is called.
+     *
+     * @param recorder the recorder to read from
+     * @param sink     the destination of the values
+     */
+    public MetricsExporter(SamplingMetricsRecorder recorder, Sink sink) {
+        this.recorder = recorder;
+        this.sink = sink;
+        HistogramSnapshot empty = new HistogramSnapshot(new long[HistogramSnapshot.BUCKETS], 0, 0);
+        for (Operation operation : Operation.values()) {
+            exported.put(operation, empty);
+        }
+    }
+
+    /**
+     * Starts exporting in a background daemon thread. Failures of the sink,
+     * checked or unchecked, do not stop the exports, the last one is available through
+     * {@link #getLastFailure()}.
+     *
+     * @param period the time between two exports
+     * @param unit   the unit of the period
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Exporter already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "shjar-metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                export();
+            } catch (IOException | RuntimeException e) {
+                // an exception would cancel all further runs of the task
+                lastFailure = e;
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Exports all values recorded since the last successful export.
+     *
+     * @throws IOException if the sink fails
+     */
+    public synchronized void export() throws IOException {
+        long time = System.currentTimeMillis();
+        Map<Operation, HistogramSnapshot> snapshots = new EnumMap<>(Operation.class);
+        StringBuilder builder = new StringBuilder();
+        for (Operation operation : Operation.values()) {
+            HistogramSnapshot snapshot = recorder.getSnapshot(operation);
+            snapshots.put(operation, snapshot);
+            HistogramSnapshot interval = snapshot.minus(exported.get(operation));
+            if (interval.getCount() == 0) {
+                continue;
+            }
+            builder.append("{\"time\":").append(time)
+                    .append(",\"operation\":\"").append(operation.name())
+                    .append("\",\"sampleRate\":").append(recorder.getSampleRate())
+                    .append(",\"samples\":").append(interval.getCount())
+                    .append(",\"mean\":").append(Math.round(interval.getMean()));
+            for (int i = 0; i < QUANTILES.length; i++) {
+                builder.append(",\"").append(QUANTILE_NAMES[i]).append("\":")
+                        .append(interval.getValueAtQuantile(QUANTILES[i]));
+            }
+            builder.append(",\"max\":").append(interval.getMax()).append("}\n");
+        }
+
+        builder.append("{\"time\":").append(time).append(",\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(counter.name()).append("\":").append(recorder.getCount(counter));
+        }
+        builder.append("}}\n");
+
+        sink.write(builder.toString());
+        exported.putAll(snapshots);
+    }
+
+    /**
+     * Returns the last failure of a background export.
+     *
+     * @return the last failure, or <code>null</code> if all exports succeeded
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stops the background exports and exports the remaining values once more.
+     * Does nothing if the exporter was not started.
+     *
+     * @throws IOException if the final export fails
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (scheduler == null) {
+                return;
+            }
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        export();
+    }
+
+    /**
+     * Creates a sink that appends to the given file. When the file would grow
+     * beyond <code>maxBytes</code>, it is renamed to <code>file.1</code>, older
+     * files are renamed to <code>file.2</code> and so on, and the oldest file is
+     * deleted.
+     *
+     * @param file     the file to append to
+     * @param maxBytes the maximum size of a single file
+     * @param maxFiles the number of rolled files to keep
+     * @return the new sink
+     */
+    public static Sink rollingFile(File file, long maxBytes, int maxFiles) {
+        if (maxBytes <= 0 || maxFiles < 0) {
+            throw new IllegalArgumentException("Invalid file limits: " + maxBytes + ", " + maxFiles);
+        }
+        return new Sink() {
+            @Override
+            public synchronized void write(String lines) throws IOException {
+                byte[] content = lines.getBytes(StandardCharsets.UTF_8);
+                if (file.length() > 0 && file.length() + content.length > maxBytes) {
+                    for (int i = maxFiles; i > 0; i--) {
+                        File source = i == 1 ? file : new File(file.getPath() + "." + (i - 1));
+                        if (source.exists()) {
+                            Files.move(source.toPath(), new File(file.getPath() + "." + i).toPath(),
+                                    StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                    Files.deleteIfExists(file.toPath());
+                }
+                try (OutputStream out = new FileOutputStream(file, true)) {
+                    out.write(content);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a sink that sends every export in a <code>POST</code> request to
+     * the given URL, for example a collector on <code>localhost</code>.
+     *
+     * @param endpoint the URL of the consumer
+     * @return the new sink
+     */
+    public static Sink http(URL endpoint) {
+        return lines -> {
+            byte[] content = lines.getBytes(StandardCharsets.UTF_8);
+            HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/x-ndjson; charset=utf-8");
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(5000);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(content.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(content);
+            }
+            int status = connection.getResponseCode();
+            InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (response != null) {
+                // consume the response, so that the connection can be reused
+                try (InputStream in = response) {
+                    in.readAllBytes();
+                }
+            }
+            if (status / 100 != 2) {
+                throw new IOException("Unexpected response from " + endpoint + ": " + status);
+            }
+        };
+    }
+
+    /**
+     * The destination of the exported values.
+     */
+    public interface Sink {
+
+        /**
+         * Writes the lines of one export.
+         *
+         * @param lines one or more lines, each terminated by <code>\n</code>
+         * @throws IOException if the lines could not be written
+         */
+        void write(String lines) throws IOException;
+    }
+}
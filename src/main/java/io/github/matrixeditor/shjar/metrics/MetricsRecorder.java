@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.metrics;
+
+/**
+ * A <code>MetricsRecorder</code> receives the counters and latencies measured
+ * on the hot paths of this module.
+ * <p>
+ * Implementations may be called concurrently from many threads and should
+ * return quickly. An adapter to an existing metrics registry can be installed
+ * through {@link Metrics#setRecorder(MetricsRecorder)}:
+ * <pre>{@code
+ * Metrics.setRecorder(new MetricsRecorder() {
+ *     public void increment(Counter counter, long delta) {
+ *         registry.counter(counter.name()).increment(delta);
+ *     }
+ *
+ *     public void record(Operation operation, long nanos) {
+ *         registry.timer(operation.name()).record(nanos, TimeUnit.NANOSECONDS);
+ *     }
+ * });
+ * }</pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public interface MetricsRecorder {
+
+    /**
+     * A recorder that drops all values.
+     */
+    MetricsRecorder NOOP = new MetricsRecorder() {
+        @Override
+        public void increment(Counter counter, long delta) {
+        }
+
+        @Override
+        public void record(Operation operation, long nanos) {
+        }
+    };
+
+    /**
+     * Adds the given delta to a counter.
+     *
+     * @param counter the counter
+     * @param delta   the value to add
+     */
+    void increment(Counter counter, long delta);
+
+    /**
+     * Records the latency of one operation.
+     *
+     * @param operation the timed operation
+     * @param nanos     the elapsed time in nanoseconds
+     */
+    void record(Operation operation, long nanos);
+
+    /**
+     * Decides whether the measurement that is about to start should be taken.
+     * It is called by {@link Metrics#start()} before the clock is read, so a
+     * recorder that samples can skip the cost of the measurement entirely.
+     *
+     * @return <code>true</code> to measure the next operation
+     */
+    default boolean sample() {
+        return true;
+    }
+}
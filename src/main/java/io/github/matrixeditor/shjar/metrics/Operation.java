@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.metrics;
+
+/**
+ * The timed operations of this module.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ * @see MetricsRecorder#record(Operation, long)
+ */
+public enum Operation {
+
+    /**
+     * Reading and decrypting a payload in <code>ShadowJar.read</code>.
+     */
+    READ,
+
+    /**
+     * Writing the decrypted content in <code>ShadowJar.writeSelf</code>.
+     */
+    WRITE_SELF,
+
+    /**
+     * Decompressing an entry of the decrypted archive in <code>ShadowJar.getEntry</code>.
+     */
+    INFLATE,
+
+    /**
+     * Resolving both names of a <code>SharedClass</code>.
+     */
+    SHARED_CLASS_RESOLVE,
+
+    /**
+     * A complete decryption in <code>ZxxZCipher</code>.
+     */
+    DECRYPT,
+
+    /**
+     * A complete encryption in <code>ZxxZCipher</code>.
+     */
+    ENCRYPT,
+
+    /**
+     * Decoding Base64 input.
+     */
+    BASE64_DECODE,
+
+    /**
+     * Encoding Base64 output.
+     */
+    BASE64_ENCODE,
+
+    /**
+     * The AES transformation of the payload.
+     */
+    AES,
+
+    /**
+     * Time spent waiting for the AES initialization lock.
+     */
+    AES_INIT_LOCK_WAIT,
+
+    /**
+     * Time spent waiting for the AES write lock.
+     */
+    AES_WRITE_LOCK_WAIT,
+
+    /**
+     * A complete run of <code>WarmUp.run</code>.
+     */
+    WARM_UP
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of scanning a native library, resource table or asset with a
+ * {@link BlobScanner}.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class BlobReport {
+
+    private final String source;
+
+    private final String format;
+
+    private final long scannedBytes;
+
+    private final List<Finding> findings;
+
+    BlobReport(String source, String format, long scannedBytes, List<Finding> findings) {
+        this.source = source;
+        this.format = format;
+        this.scannedBytes = scannedBytes;
+        this.findings = Collections.unmodifiableList(findings);
+    }
+
+    /**
+     * @return the name of the scanned file, like <code>app.apk!lib/arm64-v8a/libads.so</code>
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the detected format: <code>elf</code>, <code>arsc</code> or
+     * <code>raw</code> for assets and unknown files
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of bytes in the string sections that were scanned
+     */
+    public long getScannedBytes() {
+        return scannedBytes;
+    }
+
+    /**
+     * @return all secret keys and payloads that were found
+     */
+    public List<Finding> getFindings() {
+        return findings;
+    }
+
+    /**
+     * @return <code>true</code> if a secret key or a payload was found
+     */
+    public boolean isSuspicious() {
+        return !findings.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BlobReport{" +
+                "source='" + source + '\'' +
+                ", format=" + format +
+                ", scannedBytes=" + scannedBytes +
+                ", findings=" + findings +
+                '}';
+    }
+
+    /**
+     * A single Base64 string that is a known secret key or a payload that can
+     * be decrypted with one.
+     */
+    public static final class Finding {
+
+        /**
+         * The kind of a finding.
+         */
+        public enum Kind {
+
+            /**
+             * An encoded secret key, like <code>ShadowJar.DEFAULT_SECRET_KEY</code>.
+             */
+            SECRET_KEY,
+
+            /**
+             * A ZxxZ payload whose first block decrypts to a ZIP header.
+             */
+            PAYLOAD
+        }
+
+        private final Kind kind;
+
+        private final String section;
+
+        private final long offset;
+
+        private final int length;
+
+        private final String secretKey;
+
+        Finding(Kind kind, String section, long offset, int length, String secretKey) {
+            this.kind = kind;
+            this.section = section;
+            this.offset = offset;
+            this.length = length;
+            this.secretKey = secretKey;
+        }
+
+        /**
+         * @return whether a key or a payload was found
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the section of the finding, like <code>.rodata</code>
+         */
+        public String getSection() {
+            return section;
+        }
+
+        /**
+         * @return the offset of the Base64 string in the scanned file
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the number of Base64 characters
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return the encoded secret key that was found or that decrypts the
+         * payload
+         */
+        public String getSecretKey() {
+            return secretKey;
+        }
+
+        @Override
+        public String toString() {
+            return kind + "{section=" + section + ", offset=" + offset + ", length=" + length + '}';
+        }
+    }
+}
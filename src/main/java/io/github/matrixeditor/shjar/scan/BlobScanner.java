@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+import io.github.matrixeditor.shjar.util.ZipIndex;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.*;
+
+/**
+ * A <code>BlobScanner</code> searches native libraries, resource tables and
+ * assets for an embedded ZxxZ payload or a known secret key, like
+ * {@link ShadowJar#DEFAULT_SECRET_KEY}.
+ * <p>
+ * Only the parts of a file that can hold strings are read:
+ * <ul>
+ *     <li>ELF files (<code>lib/&#42;/&#42;.so</code>): the <code>.rodata</code> and
+ *     <code>.dynstr</code> sections, located through the section headers.</li>
+ *     <li>Resource tables (<code>resources.arsc</code>): the strings of every
+ *     string pool, in UTF-8 or UTF-16.</li>
+ *     <li>Assets and unknown files: the whole content.</li>
+ * </ul>
+ * Base64 runs are found in a single pass with a byte classifier. A run of
+ * exactly 44 characters is compared to the known secret keys. A longer run is
+ * treated as a payload candidate: its IV and first AES block are decoded, and
+ * the block is decrypted with every known key. The candidate is reported if
+ * the block starts with a ZIP header, so no candidate is decoded or decrypted
+ * beyond its first 44 characters.
+ * <pre>{@code
+ * BlobScanner scanner = new BlobScanner();
+ * for (BlobReport report : scanner.scan(new File("app.apk"))) {
+ *     if (report.isSuspicious()) {
+ *         System.out.println(report);
+ *     }
+ * }
+ * }</pre>
+ * Loose files and APKs are mapped into memory, so only the pages of the
+ * scanned sections are loaded. Stored entries of an APK, like the native
+ * libraries of apps that do not extract them, are scanned in place. Deflated
+ * entries are inflated one after another, up to {@link #setMaxEntrySize(int)}. A
+ * scan can be stopped by a {@link CancellationToken}, which is checked
+ * between strings and chunks of a section.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class BlobScanner {
+
+    /**
+     * The length of an encoded secret key, which is Base64 of 32 bytes.
+     */
+    private static final int KEY_LENGTH = 44;
+
+    /**
+     * The number of Base64 characters that are decoded for the trial
+     * decryption: 33 bytes with the IV and the first AES block.
+     */
+    private static final int TRIAL_LENGTH = 44;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int STRING_POOL_TYPE = 0x0001;
+
+    private static final int TABLE_TYPE = 0x0002;
+
+    private static final int TABLE_PACKAGE_TYPE = 0x0200;
+
+    private static final int UTF8_FLAG = 1 << 8;
+
+    private static final int SHT_NOBITS = 8;
+
+    private static final byte NONE = 0;
+
+    private static final byte ALPHABET = 1;
+
+    private static final byte PADDING = 2;
+
+    /**
+     * The class of every byte value.
+     */
+    private static final byte[] CLASSES = new byte[256];
+
+    /**
+     * The 6-bit value of every Base64 character.
+     */
+    private static final byte[] VALUES = new byte[256];
+
+    static {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            CLASSES[alphabet.charAt(i)] = ALPHABET;
+            VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+        CLASSES['='] = PADDING;
+    }
+
+    private final List<String> secretKeys = new ArrayList<>();
+
+    private int minPayloadLength = 64;
+
+    private int maxEntrySize = 128 << 20;
+
+    /**
+     * Creates a new scanner that searches for {@link ShadowJar#DEFAULT_SECRET_KEY}
+     * and payloads encrypted with it.
+     */
+    public BlobScanner() {
+        secretKeys.add(ShadowJar.DEFAULT_SECRET_KEY);
+    }
+
+    /**
+     * Adds another encoded secret key to search for and to try on payloads.
+     *
+     * @param encodedKey the encoded secret key
+     * @throws IllegalArgumentException if the key could not be decoded
+     */
+    public void addSecretKey(String encodedKey) {
+        ZxxZCipher.decodeXOR(encodedKey);
+        secretKeys.add(encodedKey);
+    }
+
+    /**
+     * Sets the number of Base64 characters a payload has at least. The
+     * default of <code>64</code> covers the IV and two AES blocks.
+     *
+     * @param minPayloadLength the minimum length
+     */
+    public void setMinPayloadLength(int minPayloadLength) {
+        if (minPayloadLength < TRIAL_LENGTH) {
+            throw new IllegalArgumentException("minPayloadLength < " + TRIAL_LENGTH);
+        }
+        this.minPayloadLength = minPayloadLength;
+    }
+
+    /**
+     * Sets the decompressed size of the largest deflated APK entry that is
+     * scanned. Larger entries fail the scan. Stored entries are not copied,
+     * so they are not limited.
+     *
+     * @param maxEntrySize the maximum size in bytes
+     */
+    public void setMaxEntrySize(int maxEntrySize) {
+        if (maxEntrySize < 0) {
+            throw new IllegalArgumentException("maxEntrySize < 0");
+        }
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Scans a single file, or the resource table, native libraries and assets
+     * of an APK.
+     *
+     * @param file the file or APK
+     * @return one report for every scanned file
+     * @throws IOException if a file could not be read or is malformed
+     */
+    public List<BlobReport> scan(File file) throws IOException {
+        return scan(file, CancellationToken.current());
+    }
+
+    /**
+     * Scans a single file, or the resource table, native libraries and assets
+     * of an APK, until the given token is cancelled.
+     *
+     * @param file  the file or APK
+     * @param token the cancellation token
+     * @return one report for every scanned file
+     * @throws IOException                 if a file could not be read or is malformed
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public List<BlobReport> scan(File file, CancellationToken token) throws IOException {
+        if (!isZip(file)) {
+            return Collections.singletonList(scan(DexScanner.map(file), file.getPath(), token));
+        }
+
+        List<BlobReport> reports = new ArrayList<>();
+        ZipIndex archive = ZipIndex.parse(DexScanner.map(file));
+        archive.setMaxEntrySize(maxEntrySize);
+        for (String name : archive.getNames()) {
+            if (!isBlobEntry(name)) {
+                continue;
+            }
+            token.check();
+            ZipIndex.Entry entry = archive.getEntry(name);
+            ByteBuffer content = entry.getMethod() == 0
+                    ? archive.getRawData(entry)
+                    : ByteBuffer.wrap(archive.read(entry, token));
+            reports.add(scan(content, file.getPath() + '!' + name, token));
+        }
+        return reports;
+    }
+
+    /**
+     * Scans a single ELF file, resource table or asset in the calling thread.
+     * The content starts at the current position of the buffer, which is not
+     * modified.
+     *
+     * @param data   the content of the file
+     * @param source the name of the file used in the report
+     * @return the report
+     * @throws IOException if the file is malformed
+     */
+    public BlobReport scan(ByteBuffer data, String source) throws IOException {
+        return scan(data, source, CancellationToken.current());
+    }
+
+    /**
+     * Scans a single ELF file, resource table or asset in the calling thread,
+     * until the given token is cancelled.
+     *
+     * @param data   the content of the file
+     * @param source the name of the file used in the report
+     * @param token  the cancellation token
+     * @return the report
+     * @throws IOException                 if the file is malformed
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public BlobReport scan(ByteBuffer data, String source, CancellationToken token) throws IOException {
+        try {
+            return new Scan(data.slice(), source, token).run();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Malformed file: " + source, e);
+        }
+    }
+
+    private static boolean isZip(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = in.readNBytes(4);
+            return magic.length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+        }
+    }
+
+    private static boolean isBlobEntry(String name) {
+        return name.equals("resources.arsc") || (name.startsWith("assets/") && !name.endsWith("/"))
+                || (name.startsWith("lib/") && name.endsWith(".so"));
+    }
+
+    /**
+     * The state of a single scan.
+     */
+    private final class Scan {
+
+        private final ByteBuffer data;
+
+        private final String source;
+
+        private final CancellationToken token;
+
+        private final List<BlobReport.Finding> findings = new ArrayList<>();
+
+        private final byte[][] keys = new byte[secretKeys.size()][];
+
+        /**
+         * One AES/ECB cipher for every key. A CBC block is decrypted with ECB
+         * and XOR'ed with the IV, so the ciphers never have to be initialized
+         * again.
+         */
+        private final Cipher[] ciphers = new Cipher[secretKeys.size()];
+
+        private final byte[] trial = new byte[TRIAL_LENGTH / 4 * 3];
+
+        private final byte[] block = new byte[16];
+
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+
+        private long scannedBytes;
+
+        Scan(ByteBuffer data, String source, CancellationToken token) {
+            this.data = data;
+            this.source = source;
+            this.token = token;
+            try {
+                for (int i = 0; i < keys.length; i++) {
+                    String key = secretKeys.get(i);
+                    keys[i] = key.getBytes(StandardCharsets.US_ASCII);
+                    ciphers[i] = Cipher.getInstance("AES/ECB/NoPadding");
+                    ciphers[i].init(Cipher.DECRYPT_MODE, new SecretKeySpec(ZxxZCipher.decodeXOR(key), "AES"));
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        BlobReport run() throws IOException {
+            String format;
+            if (data.limit() >= 16 && data.getInt(0) == 0x7F454C46) {
+                format = "elf";
+                scanElf();
+            } else if (data.limit() >= 12 && data.get(0) == TABLE_TYPE && data.get(1) == 0 && data.get(2) == 12
+                    && data.get(3) == 0) {
+                format = "arsc";
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                scanChunks(12, Math.min(data.getInt(4), data.limit()));
+            } else {
+                format = "raw";
+                scanRegion(0, data.limit(), 1, "content");
+            }
+            return new BlobReport(source, format, scannedBytes, findings);
+        }
+
+        private void scanElf() throws IOException {
+            boolean is64 = data.get(4) == 2;
+            data.order(data.get(5) == 2 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            long headersOff = is64 ? data.getLong(0x28) : data.getInt(0x20) & 0xFFFFFFFFL;
+            int headerSize = data.getShort(is64 ? 0x3A : 0x2E) & 0xFFFF;
+            int headerCount = data.getShort(is64 ? 0x3C : 0x30) & 0xFFFF;
+            int namesIndex = data.getShort(is64 ? 0x3E : 0x32) & 0xFFFF;
+            if (headersOff <= 0 || headerCount == 0 || namesIndex >= headerCount) {
+                throw new IOException("ELF file without section headers: " + source);
+            }
+
+            int names = (int) sectionOffset(checkedOffset(headersOff) + namesIndex * headerSize, is64);
+            for (int i = 0; i < headerCount; i++) {
+                int header = checkedOffset(headersOff + (long) i * headerSize);
+                if (data.getInt(header + 4) == SHT_NOBITS) {
+                    continue;
+                }
+                String name = readName(names + data.getInt(header));
+                if (name.equals(".dynstr") || name.startsWith(".rodata")) {
+                    int offset = checkedOffset(sectionOffset(header, is64));
+                    long size = is64 ? data.getLong(header + 0x20) : data.getInt(header + 0x14) & 0xFFFFFFFFL;
+                    scanRegion(offset, checkedOffset(offset + size), 1, name);
+                }
+            }
+        }
+
+        private long sectionOffset(int header, boolean is64) {
+            return is64 ? data.getLong(header + 0x18) : data.getInt(header + 0x10) & 0xFFFFFFFFL;
+        }
+
+        private int checkedOffset(long offset) throws IOException {
+            if (offset < 0 || offset > data.limit()) {
+                throw new IOException("Invalid offset " + offset + " in " + source);
+            }
+            return (int) offset;
+        }
+
+        private String readName(int offset) {
+            StringBuilder name = new StringBuilder();
+            for (byte b; (b = data.get(offset)) != 0 && name.length() < 256; offset++) {
+                name.append((char) (b & 0xFF));
+            }
+            return name.toString();
+        }
+
+        /**
+         * Walks the chunks of a resource table or package and scans all
+         * string pools.
+         */
+        private void scanChunks(int position, int end) throws IOException {
+            while (position + 8 <= end) {
+                int type = data.getShort(position) & 0xFFFF;
+                int headerSize = data.getShort(position + 2) & 0xFFFF;
+                int size = data.getInt(position + 4);
+                if (size < 8 || headerSize > size || size > end - position) {
+                    throw new IOException("Malformed resource table: " + source);
+                }
+                if (type == STRING_POOL_TYPE) {
+                    scanStringPool(position, headerSize, size);
+                } else if (type == TABLE_PACKAGE_TYPE) {
+                    scanChunks(position + headerSize, position + size);
+                }
+                position += size;
+            }
+        }
+
+        private void scanStringPool(int pool, int headerSize, int size) throws IOException {
+            int count = data.getInt(pool + 8);
+            boolean utf8 = (data.getInt(pool + 16) & UTF8_FLAG) != 0;
+            int strings = pool + data.getInt(pool + 20);
+            int end = pool + size;
+            if (count < 0 || count > (size - headerSize) / 4) {
+                throw new IOException("Malformed string pool: " + source);
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (i % 1024 == 0) {
+                    token.check();
+                }
+                int offset = strings + data.getInt(pool + headerSize + i * 4);
+                int length;
+                if (utf8) {
+                    // the UTF-16 length is skipped, the UTF-8 length follows
+                    offset += (data.get(offset) & 0x80) != 0 ? 2 : 1;
+                    length = data.get(offset++) & 0xFF;
+                    if ((length & 0x80) != 0) {
+                        length = (length & 0x7F) << 8 | (data.get(offset++) & 0xFF);
+                    }
+                } else {
+                    length = data.getShort(offset) & 0xFFFF;
+                    offset += 2;
+                    if ((length & 0x8000) != 0) {
+                        length = (length & 0x7FFF) << 16 | (data.getShort(offset) & 0xFFFF);
+                        offset += 2;
+                    }
+                    length *= 2;
+                }
+                if (offset + (long) length > end) {
+                    throw new IOException("Malformed string pool: " + source);
+                }
+                scanRegion(offset, offset + length, utf8 ? 1 : 2, "string pool");
+            }
+        }
+
+        /**
+         * Finds all Base64 runs in the given range. With a stride of two, the
+         * range is read as UTF-16LE and only characters below 256 are
+         * classified.
+         */
+        private void scanRegion(int start, int end, int stride, String section) {
+            scannedBytes += end - start;
+            int runStart = start;
+            int chars = 0;
+            int padding = 0;
+            for (int chunk = start; chunk < end; chunk += CHUNK_SIZE) {
+                token.check();
+                // classified from a copy, runs are read again from the buffer
+                int count = Math.min(end - chunk, CHUNK_SIZE);
+                ByteBuffer view = data.duplicate();
+                view.position(chunk);
+                view.get(buffer, 0, count);
+                for (int i = 0; i < count; i += stride) {
+                    byte type = CLASSES[buffer[i] & 0xFF];
+                    if (stride == 2 && buffer[i + 1] != 0) {
+                        type = NONE;
+                    }
+                    int p = chunk + i;
+
+                    if (type == ALPHABET && padding == 0) {
+                        if (chars++ == 0) {
+                            runStart = p;
+                        }
+                    } else if (type == PADDING && chars > 0 && padding < 2) {
+                        padding++;
+                    } else {
+                        if (chars > 0) {
+                            candidate(runStart, chars, padding, stride, section);
+                        }
+                        chars = type == ALPHABET ? 1 : 0;
+                        padding = 0;
+                        runStart = p;
+                    }
+                }
+            }
+            if (chars > 0) {
+                candidate(runStart, chars, padding, stride, section);
+            }
+        }
+
+        private void candidate(int start, int chars, int padding, int stride, String section) {
+            int length = chars + padding;
+            if (length == KEY_LENGTH) {
+                for (int k = 0; k < keys.length; k++) {
+                    if (equalsAscii(start, stride, keys[k])) {
+                        findings.add(new BlobReport.Finding(BlobReport.Finding.Kind.SECRET_KEY, section, start,
+                                length, secretKeys.get(k)));
+                        return;
+                    }
+                }
+            }
+            if (length >= minPayloadLength && length % 4 == 0 && chars >= TRIAL_LENGTH) {
+                int k = trialDecrypt(start, stride);
+                if (k >= 0) {
+                    findings.add(new BlobReport.Finding(BlobReport.Finding.Kind.PAYLOAD, section, start, length,
+                            secretKeys.get(k)));
+                }
+            }
+        }
+
+        private boolean equalsAscii(int start, int stride, byte[] value) {
+            for (int i = 0; i < value.length; i++) {
+                if (data.get(start + i * stride) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Decodes the IV and the first block of a candidate and decrypts the
+         * block with every key.
+         *
+         * @return the index of the key that decrypts a ZIP header, or <code>-1</code>
+         */
+        private int trialDecrypt(int start, int stride) {
+            for (int group = 0; group < TRIAL_LENGTH / 4; group++) {
+                int bits = 0;
+                for (int i = 0; i < 4; i++) {
+                    bits = bits << 6 | VALUES[data.get(start + (group * 4 + i) * stride) & 0xFF];
+                }
+                trial[group * 3] = (byte) (bits >> 16);
+                trial[group * 3 + 1] = (byte) (bits >> 8);
+                trial[group * 3 + 2] = (byte) bits;
+            }
+
+            try {
+                for (int k = 0; k < ciphers.length; k++) {
+                    ciphers[k].doFinal(trial, 16, 16, block, 0);
+                    if ((block[0] ^ trial[0]) == 'P' && (block[1] ^ trial[1]) == 'K'
+                            && (block[2] ^ trial[2]) == 3 && (block[3] ^ trial[3]) == 4) {
+                        return k;
+                    }
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BlobScanner <file>...");
+            System.exit(1);
+        }
+
+        BlobScanner scanner = new BlobScanner();
+        for (String arg : args) {
+            for (BlobReport report : scanner.scan(new File(arg))) {
+                if (report.isSuspicious()) {
+                    System.out.println(report);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of scanning a single DEX file with a {@link DexScanner}.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class DexReport {
+
+    private final String source;
+
+    private final int classCount;
+
+    private final int methodCount;
+
+    private final List<WrapperClass> wrappers;
+
+    private final List<String> secretKeys;
+
+    DexReport(String source, int classCount, int methodCount, List<WrapperClass> wrappers,
+              List<String> secretKeys) {
+        this.source = source;
+        this.classCount = classCount;
+        this.methodCount = methodCount;
+        this.wrappers = Collections.unmodifiableList(wrappers);
+        this.secretKeys = Collections.unmodifiableList(secretKeys);
+    }
+
+    /**
+     * @return the name of the scanned DEX file, like <code>app.apk!classes2.dex</code>
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the number of class definitions in the DEX file
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @return the number of methods with code that were scanned
+     */
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    /**
+     * @return all classes that match the delegate pattern
+     */
+    public List<WrapperClass> getWrappers() {
+        return wrappers;
+    }
+
+    /**
+     * @return the known secret keys found in the string pool
+     */
+    public List<String> getSecretKeys() {
+        return secretKeys;
+    }
+
+    /**
+     * @return <code>true</code> if wrapper classes or a secret key were found
+     */
+    public boolean isSuspicious() {
+        return !wrappers.isEmpty() || !secretKeys.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "DexReport{" +
+                "source='" + source + '\'' +
+                ", classes=" + classCount +
+                ", methods=" + methodCount +
+                ", wrappers=" + wrappers +
+                ", secretKeys=" + secretKeys +
+                '}';
+    }
+
+    /**
+     * A class that looks up encrypted names and delegates through
+     * <code>java.lang.reflect.Method.invoke()</code>.
+     */
+    public static final class WrapperClass {
+
+        private final String descriptor;
+
+        private final List<String> encryptedNames;
+
+        private final int delegatingMethods;
+
+        WrapperClass(String descriptor, List<String> encryptedNames, int delegatingMethods) {
+            this.descriptor = descriptor;
+            this.encryptedNames = Collections.unmodifiableList(encryptedNames);
+            this.delegatingMethods = delegatingMethods;
+        }
+
+        /**
+         * @return the type descriptor, like <code>Lcom/google/android/gms/ads/a;</code>
+         */
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * @return the encrypted class and method names loaded by this class,
+         * in the order of their first use
+         */
+        public List<String> getEncryptedNames() {
+            return encryptedNames;
+        }
+
+        /**
+         * @return the number of methods that call <code>Method.invoke()</code>
+         */
+        public int getDelegatingMethods() {
+            return delegatingMethods;
+        }
+
+        @Override
+        public String toString() {
+            return descriptor + "{names=" + encryptedNames.size() + ", delegating=" + delegatingMethods + '}';
+        }
+    }
+}
@@ -0,0 +1,742 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A <code>DexScanner</code> searches the DEX files of a host app for the
+ * wrapper classes the AdMob loader uses to delegate into the hidden JAR.
+ * <p>
+ * A wrapper class loads the encrypted names of a shared class and method
+ * (see {@link io.github.matrixeditor.shjar.SharedClass}) with
+ * <code>const-string</code>, resolves them with a static lookup method and
+ * calls the resolved method through
+ * <code>java.lang.reflect.Method.invoke()</code>. A class is reported if one
+ * of its methods contains this sequence in order: a <code>const-string</code>
+ * of a string that has the shape of a ZxxZ ciphertext (Base64 of an IV and at
+ * least one AES block), then an <code>invoke-static</code>, then an invoke of
+ * <code>Method.invoke()</code>. Encrypted names and reflective calls in
+ * different methods do not match. In addition, the string
+ * pool is searched for the known secret keys, like
+ * {@link ShadowJar#DEFAULT_SECRET_KEY}.
+ * <p>
+ * Every DEX file is read in one sequential pass over its
+ * <code>class_defs</code>, <code>class_data</code> and <code>code_item</code>
+ * sections. No instructions are decoded beyond their width, no strings are
+ * created except for the reported ones, and loose DEX files are mapped into
+ * memory. The DEX files of an APK (<code>classes.dex</code>,
+ * <code>classes2.dex</code>, ...) and of multiple input files are scanned in
+ * parallel:
+ * <pre>{@code
+ * DexScanner scanner = new DexScanner();
+ * for (DexReport report : scanner.scan(new File("app.apk"))) {
+ *     if (report.isSuspicious()) {
+ *         System.out.println(report);
+ *     }
+ * }
+ * }</pre>
+ * All scans can be stopped by a {@link CancellationToken}, which is checked
+ * between classes. Methods without a token use the
+ * {@link CancellationToken#current() current} token of the calling thread.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class DexScanner {
+
+    private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\.dex");
+
+    private static final int HEADER_SIZE = 0x70;
+
+    private static final int ENDIAN_CONSTANT = 0x12345678;
+
+    private static final int NO_INDEX = -1;
+
+    /**
+     * The number of classes scanned between two checks of the cancellation
+     * token.
+     */
+    private static final int CHECK_INTERVAL = 256;
+
+    private static final byte[] METHOD_DESCRIPTOR = "Ljava/lang/reflect/Method;".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] INVOKE_NAME = "invoke".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The shortest encrypted name: Base64 of a 16 byte IV and one AES block.
+     */
+    private static final int MIN_NAME_LENGTH = 44;
+
+    private static final int MAX_NAME_LENGTH = 4096;
+
+    private static final byte STRING_UNKNOWN = 0;
+
+    private static final byte STRING_ENCRYPTED = 1;
+
+    private static final byte STRING_OTHER = 2;
+
+    /**
+     * Instruction widths in 16-bit code units, indexed by opcode. Unused
+     * opcodes have a width of one unit.
+     */
+    private static final byte[] WIDTHS = new byte[256];
+
+    private static final boolean[] BASE64 = new boolean[256];
+
+    static {
+        Arrays.fill(WIDTHS, (byte) 1);
+        setWidth(2, 0x02, 0x05, 0x08, 0x13, 0x15, 0x16, 0x19, 0x1a, 0x1c, 0x1f, 0x20, 0x22, 0x23, 0x29,
+                0xfe, 0xff);
+        setWidth(3, 0x03, 0x06, 0x09, 0x14, 0x17, 0x1b, 0x24, 0x25, 0x26, 0x2a, 0x2b, 0x2c, 0xfc, 0xfd);
+        setWidth(4, 0xfa, 0xfb);
+        setWidth(5, 0x18);
+        setWidth(2, 0x2d, 0x3d); // cmpkind, if-test, if-testz
+        setWidth(2, 0x44, 0x6d); // arrayop, iinstanceop, sstaticop
+        setWidth(3, 0x6e, 0x72); // invoke-kind
+        setWidth(3, 0x74, 0x78); // invoke-kind/range
+        setWidth(2, 0x90, 0xaf); // binop
+        setWidth(2, 0xd0, 0xe2); // binop/lit16, binop/lit8
+
+        for (char c = 'A'; c <= 'Z'; c++) {
+            BASE64[c] = true;
+            BASE64[Character.toLowerCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            BASE64[c] = true;
+        }
+        BASE64['+'] = true;
+        BASE64['/'] = true;
+    }
+
+    private final List<String> secretKeys = new ArrayList<>();
+
+    private SignatureSet signatures;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a new scanner that searches for {@link ShadowJar#DEFAULT_SECRET_KEY}.
+     */
+    public DexScanner() {
+        secretKeys.add(ShadowJar.DEFAULT_SECRET_KEY);
+    }
+
+    private static void setWidth(int width, int... opcodes) {
+        for (int opcode : opcodes) {
+            WIDTHS[opcode] = (byte) width;
+        }
+    }
+
+    private static void setWidth(int width, int first, int last) {
+        for (int opcode = first; opcode <= last; opcode++) {
+            WIDTHS[opcode] = (byte) width;
+        }
+    }
+
+    /**
+     * Adds another encoded secret key to search for.
+     *
+     * @param encodedKey the encoded secret key
+     */
+    public void addSecretKey(String encodedKey) {
+        secretKeys.add(Objects.requireNonNull(encodedKey));
+    }
+
+    /**
+     * Restricts the reported encrypted names to the given known signatures.
+     * Without a signature set, every string with the shape of a ZxxZ
+     * ciphertext is treated as an encrypted name.
+     *
+     * @param signatures the known encrypted names, or <code>null</code>
+     */
+    public void setSignatures(SignatureSet signatures) {
+        this.signatures = signatures;
+    }
+
+    /**
+     * Sets the number of worker threads.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Scans a DEX file, or all <code>classes*.dex</code> entries of an APK or
+     * JAR file.
+     *
+     * @param file the DEX, APK or JAR file
+     * @return one report for every scanned DEX file
+     * @throws IOException          if a file could not be read or is malformed
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public List<DexReport> scan(File file) throws IOException, InterruptedException {
+        return scan(Collections.singletonList(file));
+    }
+
+    /**
+     * Scans a DEX file, or all <code>classes*.dex</code> entries of an APK or
+     * JAR file, until the given token is cancelled.
+     *
+     * @param file  the DEX, APK or JAR file
+     * @param token the cancellation token
+     * @return one report for every scanned DEX file
+     * @throws IOException                 if a file could not be read or is malformed
+     * @throws InterruptedException        if the current thread was interrupted
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public List<DexReport> scan(File file, CancellationToken token) throws IOException, InterruptedException {
+        return scan(Collections.singletonList(file), token);
+    }
+
+    /**
+     * Scans the given DEX, APK or JAR files in parallel.
+     *
+     * @param files the files to scan
+     * @return one report for every scanned DEX file, in the order of the files
+     * and their entries
+     * @throws IOException          if a file could not be read or is malformed
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public List<DexReport> scan(Collection<File> files) throws IOException, InterruptedException {
+        return scan(files, CancellationToken.current());
+    }
+
+    /**
+     * Scans the given DEX, APK or JAR files in parallel, until the given token
+     * is cancelled.
+     *
+     * @param files the files to scan
+     * @param token the cancellation token, shared by all worker threads
+     * @return one report for every scanned DEX file, in the order of the files
+     * and their entries
+     * @throws IOException                 if a file could not be read or is malformed
+     * @throws InterruptedException        if the current thread was interrupted
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public List<DexReport> scan(Collection<File> files, CancellationToken token)
+            throws IOException, InterruptedException {
+        List<ZipFile> archives = new ArrayList<>();
+        List<Callable<DexReport>> tasks = new ArrayList<>();
+        ExecutorService executor = null;
+        try {
+            for (File file : files) {
+                if (isDex(file)) {
+                    tasks.add(() -> scan(map(file), file.getPath(), token));
+                    continue;
+                }
+
+                ZipFile archive = new ZipFile(file);
+                archives.add(archive);
+                for (Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements(); ) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && DEX_ENTRY.matcher(entry.getName()).matches()) {
+                        tasks.add(() -> {
+                            token.check();
+                            try (InputStream in = archive.getInputStream(entry)) {
+                                return scan(ByteBuffer.wrap(in.readAllBytes()), file.getPath() + '!' + entry.getName(),
+                                        token);
+                            }
+                        });
+                    }
+                }
+            }
+
+            List<DexReport> reports = new ArrayList<>(tasks.size());
+            if (tasks.isEmpty()) {
+                return reports;
+            }
+            executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+            for (Future<DexReport> future : executor.invokeAll(tasks)) {
+                try {
+                    reports.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    if (cause instanceof OperationCancelledException) {
+                        throw (OperationCancelledException) cause;
+                    }
+                    throw new IOException("Could not scan DEX file", cause);
+                }
+            }
+            return reports;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (ZipFile archive : archives) {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * Scans a single DEX file in the calling thread. The content starts at the
+     * current position of the buffer, which is not modified.
+     *
+     * @param dex    the content of the DEX file
+     * @param source the name of the DEX file used in the report
+     * @return the report
+     * @throws IOException if the DEX file is malformed
+     */
+    public DexReport scan(ByteBuffer dex, String source) throws IOException {
+        return scan(dex, source, CancellationToken.current());
+    }
+
+    /**
+     * Scans a single DEX file in the calling thread, until the given token is
+     * cancelled. The content starts at the current position of the buffer,
+     * which is not modified.
+     *
+     * @param dex    the content of the DEX file
+     * @param source the name of the DEX file used in the report
+     * @param token  the cancellation token
+     * @return the report
+     * @throws IOException                 if the DEX file is malformed
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public DexReport scan(ByteBuffer dex, String source, CancellationToken token) throws IOException {
+        try {
+            return new Parser(dex.slice().order(ByteOrder.LITTLE_ENDIAN), source, token).parse();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Malformed DEX file: " + source, e);
+        }
+    }
+
+    private static boolean isDex(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = in.readNBytes(4);
+            return magic.length == 4 && magic[0] == 'd' && magic[1] == 'e' && magic[2] == 'x' && magic[3] == '\n';
+        }
+    }
+
+    /**
+     * Maps the given file into memory, only the pages that are read are
+     * loaded.
+     */
+    static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * The state of a single scan. The class data is read through a cursor,
+     * everything else with absolute reads.
+     */
+    private final class Parser {
+
+        private final ByteBuffer dex;
+
+        private final String source;
+
+        private final CancellationToken token;
+
+        private int position;
+
+        private int stringIdsSize;
+
+        private int stringIdsOff;
+
+        private int typeIdsSize;
+
+        private int typeIdsOff;
+
+        private int methodIdsSize;
+
+        private int methodIdsOff;
+
+        private int methodType = NO_INDEX;
+
+        private int invokeName = NO_INDEX;
+
+        private byte[] stringStates;
+
+        private byte[] scratch;
+
+        private int[] classNames = new int[8];
+
+        private int classNameCount;
+
+        Parser(ByteBuffer dex, String source, CancellationToken token) {
+            this.dex = dex;
+            this.source = source;
+            this.token = token;
+        }
+
+        DexReport parse() throws IOException {
+            if (dex.limit() < HEADER_SIZE || dex.get(0) != 'd' || dex.get(1) != 'e' || dex.get(2) != 'x'
+                    || dex.get(3) != '\n' || dex.get(7) != 0) {
+                throw new IOException("Not a DEX file: " + source);
+            }
+            if (dex.getInt(40) != ENDIAN_CONSTANT) {
+                throw new IOException("Unsupported byte order in DEX file: " + source);
+            }
+            stringIdsSize = section(56, 4);
+            stringIdsOff = dex.getInt(60);
+            typeIdsSize = section(64, 4);
+            typeIdsOff = dex.getInt(68);
+            methodIdsSize = section(88, 8);
+            methodIdsOff = dex.getInt(92);
+            int classDefsSize = section(96, 32);
+            int classDefsOff = dex.getInt(100);
+
+            List<String> keys = new ArrayList<>();
+            for (String key : secretKeys) {
+                if (findString(key.getBytes(StandardCharsets.UTF_8)) != NO_INDEX) {
+                    keys.add(key);
+                }
+            }
+
+            int methodDescriptor = findString(METHOD_DESCRIPTOR);
+            if (methodDescriptor != NO_INDEX) {
+                methodType = findType(methodDescriptor);
+                invokeName = findString(INVOKE_NAME);
+            }
+            boolean delegation = methodType != NO_INDEX && invokeName != NO_INDEX;
+            if (delegation) {
+                stringStates = new byte[stringIdsSize];
+                scratch = new byte[MIN_NAME_LENGTH * 2];
+            }
+
+            int methodCount = 0;
+            List<DexReport.WrapperClass> wrappers = new ArrayList<>();
+            for (int c = 0; c < classDefsSize; c++) {
+                if (c % CHECK_INTERVAL == 0) {
+                    token.check();
+                }
+                int classDef = classDefsOff + c * 32;
+                int classDataOff = dex.getInt(classDef + 24);
+                if (classDataOff == 0) {
+                    continue;
+                }
+
+                position = classDataOff;
+                int fields = readUleb128() + readUleb128();
+                int methods = readUleb128() + readUleb128();
+                for (int i = 0; i < fields; i++) {
+                    skipUleb128();
+                    skipUleb128();
+                }
+
+                classNameCount = 0;
+                int delegating = 0;
+                for (int i = 0; i < methods; i++) {
+                    skipUleb128();
+                    skipUleb128();
+                    int codeOff = readUleb128();
+                    if (codeOff != 0) {
+                        methodCount++;
+                        if (delegation && scanCode(codeOff)) {
+                            delegating++;
+                        }
+                    }
+                }
+
+                if (delegating > 0) {
+                    List<String> names = new ArrayList<>(classNameCount);
+                    for (int i = 0; i < classNameCount; i++) {
+                        names.add(readString(classNames[i]));
+                    }
+                    int descriptor = dex.getInt(typeIdsOff + dex.getInt(classDef) * 4);
+                    wrappers.add(new DexReport.WrapperClass(readString(descriptor), names, delegating));
+                }
+            }
+            return new DexReport(source, classDefsSize, methodCount, wrappers, keys);
+        }
+
+        /**
+         * Walks the instructions of a code item and records the encrypted names
+         * if the code delegates.
+         *
+         * @return whether the code loads an encrypted name, passes it to a static
+         * method and calls <code>Method.invoke()</code> afterwards
+         */
+        private boolean scanCode(int codeOff) throws IOException {
+            int insnsSize = dex.getInt(codeOff + 12);
+            int offset = codeOff + 16;
+            long end = offset + 2L * (insnsSize & 0xFFFFFFFFL);
+            if (end > dex.limit()) {
+                throw new IOException("Malformed code item at " + codeOff + " in " + source);
+            }
+
+            int namesBefore = classNameCount;
+            boolean name = false;
+            boolean lookup = false;
+            boolean delegates = false;
+            while (offset < end) {
+                int unit = dex.getShort(offset) & 0xFFFF;
+                int opcode = unit & 0xFF;
+                int width = WIDTHS[opcode];
+                if (opcode == 0x1a) {
+                    name |= noteString(dex.getShort(offset + 2) & 0xFFFF);
+                } else if (opcode == 0x1b) {
+                    name |= noteString(dex.getInt(offset + 2));
+                } else if (opcode == 0x71 || opcode == 0x77) {
+                    // invoke-static, invoke-static/range
+                    lookup |= name;
+                } else if ((opcode >= 0x6e && opcode <= 0x72) || (opcode >= 0x74 && opcode <= 0x78)) {
+                    delegates |= isMethodInvoke(dex.getShort(offset + 2) & 0xFFFF) && lookup;
+                } else if (opcode == 0 && unit != 0) {
+                    width = payloadWidth(offset, unit);
+                }
+                offset += 2 * width;
+            }
+            if (!delegates) {
+                // names of methods that do not delegate are not reported
+                classNameCount = namesBefore;
+            }
+            return delegates;
+        }
+
+        private int payloadWidth(int offset, int ident) throws IOException {
+            switch (ident) {
+                case 0x0100: // packed-switch-payload
+                    return 4 + 2 * (dex.getShort(offset + 2) & 0xFFFF);
+                case 0x0200: // sparse-switch-payload
+                    return 2 + 4 * (dex.getShort(offset + 2) & 0xFFFF);
+                case 0x0300: // fill-array-data-payload
+                    long bytes = (dex.getShort(offset + 2) & 0xFFFFL) * (dex.getInt(offset + 4) & 0xFFFFFFFFL);
+                    if (bytes > dex.limit()) {
+                        throw new IOException("Malformed array payload at " + offset + " in " + source);
+                    }
+                    return 4 + (int) ((bytes + 1) / 2);
+                default:
+                    return 1;
+            }
+        }
+
+        private boolean isMethodInvoke(int methodIdx) {
+            if (methodIdx >= methodIdsSize) {
+                throw new IndexOutOfBoundsException("method index " + methodIdx);
+            }
+            int methodId = methodIdsOff + methodIdx * 8;
+            return (dex.getShort(methodId) & 0xFFFF) == methodType && dex.getInt(methodId + 4) == invokeName;
+        }
+
+        /**
+         * Records the string if it is an encrypted name that was not recorded
+         * for the current class before.
+         *
+         * @return whether the string is an encrypted name
+         */
+        private boolean noteString(int stringIdx) {
+            if (stringIdx < 0 || stringIdx >= stringIdsSize) {
+                throw new IndexOutOfBoundsException("string index " + stringIdx);
+            }
+            byte state = stringStates[stringIdx];
+            if (state == STRING_UNKNOWN) {
+                state = isEncryptedName(stringIdx) ? STRING_ENCRYPTED : STRING_OTHER;
+                stringStates[stringIdx] = state;
+            }
+            if (state != STRING_ENCRYPTED) {
+                return false;
+            }
+
+            for (int i = 0; i < classNameCount; i++) {
+                if (classNames[i] == stringIdx) {
+                    return true;
+                }
+            }
+            if (classNameCount == classNames.length) {
+                classNames = Arrays.copyOf(classNames, classNameCount * 2);
+            }
+            classNames[classNameCount++] = stringIdx;
+            return true;
+        }
+
+        /**
+         * Checks whether a string is a ciphertext in the ZxxZ format: Base64 of
+         * the IV and at least one AES block.
+         */
+        private boolean isEncryptedName(int stringIdx) {
+            int saved = position;
+            position = dex.getInt(stringIdsOff + stringIdx * 4);
+            int length = readUleb128();
+            int offset = position;
+            position = saved;
+            if (length < MIN_NAME_LENGTH || length > MAX_NAME_LENGTH || length % 4 != 0) {
+                return false;
+            }
+
+            int padding = 0;
+            for (int i = 0; i < length; i++) {
+                int b = dex.get(offset + i) & 0xFF;
+                if (b == '=' && i >= length - 2) {
+                    padding++;
+                } else if (!BASE64[b] || padding > 0) {
+                    return false;
+                }
+            }
+            int decoded = length / 4 * 3 - padding;
+            if (decoded % 16 != 0) {
+                return false;
+            }
+
+            if (signatures != null) {
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                for (int i = 0; i < length; i++) {
+                    scratch[i] = dex.get(offset + i);
+                }
+                return signatures.contains(scratch, 0, length);
+            }
+            return true;
+        }
+
+        private int section(int sizeOffset, int itemSize) throws IOException {
+            long size = dex.getInt(sizeOffset) & 0xFFFFFFFFL;
+            long offset = dex.getInt(sizeOffset + 4) & 0xFFFFFFFFL;
+            if (size != 0 && offset + size * itemSize > dex.limit()) {
+                throw new IOException("Malformed DEX header in " + source);
+            }
+            return (int) size;
+        }
+
+        /**
+         * Binary search in the sorted string pool. The pool is sorted by code
+         * points, which is the unsigned byte order for ASCII strings.
+         */
+        private int findString(byte[] value) {
+            int low = 0;
+            int high = stringIdsSize - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareString(mid, value);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return NO_INDEX;
+        }
+
+        private int compareString(int stringIdx, byte[] value) {
+            int offset = dex.getInt(stringIdsOff + stringIdx * 4);
+            while ((dex.get(offset++) & 0x80) != 0) {
+                // skip utf16_size
+            }
+            for (int i = 0; i < value.length; i++) {
+                int b = dex.get(offset + i) & 0xFF;
+                if (b != (value[i] & 0xFF)) {
+                    return b == 0 ? -1 : b - (value[i] & 0xFF);
+                }
+            }
+            return dex.get(offset + value.length) == 0 ? 0 : 1;
+        }
+
+        /**
+         * Binary search in the type ids, which are sorted by their string index.
+         */
+        private int findType(int stringIdx) {
+            int low = 0;
+            int high = typeIdsSize - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = dex.getInt(typeIdsOff + mid * 4);
+                if (value < stringIdx) {
+                    low = mid + 1;
+                } else if (value > stringIdx) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return NO_INDEX;
+        }
+
+        /**
+         * Decodes a MUTF-8 string from the string pool.
+         */
+        private String readString(int stringIdx) {
+            int saved = position;
+            position = dex.getInt(stringIdsOff + stringIdx * 4);
+            char[] chars = new char[readUleb128()];
+            int offset = position;
+            position = saved;
+
+            for (int i = 0; i < chars.length; i++) {
+                int a = dex.get(offset++) & 0xFF;
+                if (a < 0x80) {
+                    chars[i] = (char) a;
+                } else if ((a & 0xE0) == 0xC0) {
+                    chars[i] = (char) (((a & 0x1F) << 6) | (dex.get(offset++) & 0x3F));
+                } else {
+                    int b = dex.get(offset++) & 0x3F;
+                    chars[i] = (char) (((a & 0x0F) << 12) | (b << 6) | (dex.get(offset++) & 0x3F));
+                }
+            }
+            return new String(chars);
+        }
+
+        private int readUleb128() {
+            int result = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = dex.get(position++);
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IndexOutOfBoundsException("uleb128 at " + position);
+        }
+
+        private void skipUleb128() {
+            readUleb128();
+        }
+    }
+}
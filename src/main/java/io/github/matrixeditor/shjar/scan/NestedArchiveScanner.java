@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A <code>NestedArchiveScanner</code> searches all DEX files inside of nested
+ * ZIP containers, like split APKs in an APKS bundle, the modules of an AAB file
+ * or the <code>classes.jar</code> of an AAR inside a ZIP file.
+ * <p>
+ * The input is read once as a stream. Every ZIP entry is identified by its
+ * first bytes: nested archives are read recursively through a
+ * {@link ZipInputStream} on top of the entry, DEX files are copied into a
+ * reused buffer and scanned by a {@link DexScanner}, and all other entries are
+ * skipped. No temporary files are created and intermediate archives are never
+ * held in memory, so each nesting level costs only a small read buffer and an
+ * inflater. The largest buffer is the one for DEX files, which is limited by
+ * {@link #setMaxDexSize(int)}.
+ * <pre>{@code
+ * NestedArchiveScanner scanner = new NestedArchiveScanner();
+ * for (DexReport report : scanner.scan(new File("bundle.apks"))) {
+ *     if (report.isSuspicious()) {
+ *         System.out.println(report);
+ *     }
+ * }
+ * }</pre>
+ * The source of a report contains the path of the DEX file through all
+ * archives, like <code>bundle.apks!splits/base-master.apk!classes.dex</code>.
+ * A scan can be stopped by a {@link CancellationToken}, which is checked for
+ * every entry and every read chunk.
+ * <p>
+ * The scanner can be used from the command line as well:
+ * <pre>
+ * NestedArchiveScanner [-d &lt;max depth&gt;] &lt;file&gt;...
+ * </pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class NestedArchiveScanner {
+
+    private static final int MAGIC_LENGTH = 4;
+
+    private final DexScanner scanner;
+
+    private int maxDepth = 8;
+
+    private int maxDexSize = 128 << 20;
+
+    private int bufferSize = 8192;
+
+    /**
+     * Creates a new scanner with a default {@link DexScanner}.
+     */
+    public NestedArchiveScanner() {
+        this(new DexScanner());
+    }
+
+    /**
+     * Creates a new scanner that uses the given {@link DexScanner} for all DEX
+     * files.
+     *
+     * @param scanner the scanner for DEX files
+     */
+    public NestedArchiveScanner(DexScanner scanner) {
+        this.scanner = Objects.requireNonNull(scanner);
+    }
+
+    /**
+     * Sets the number of archive levels below the input that are opened.
+     * Deeper archives are skipped.
+     *
+     * @param maxDepth the maximum nesting depth
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth < 0");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Sets the size of the largest DEX file that is scanned. Larger DEX files
+     * fail the scan.
+     *
+     * @param maxDexSize the maximum size in bytes
+     */
+    public void setMaxDexSize(int maxDexSize) {
+        if (maxDexSize < MAGIC_LENGTH) {
+            throw new IllegalArgumentException("maxDexSize < " + MAGIC_LENGTH);
+        }
+        this.maxDexSize = maxDexSize;
+    }
+
+    /**
+     * Sets the size of the read buffer of every nesting level.
+     *
+     * @param bufferSize the buffer size in bytes
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 512) {
+            throw new IllegalArgumentException("bufferSize < 512");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Scans a DEX file or all DEX files in a (nested) archive.
+     *
+     * @param file the DEX file or archive
+     * @return one report for every DEX file, in the order of the archive
+     * entries
+     * @throws IOException if the file could not be read or a DEX file is
+     *                     malformed or too large
+     */
+    public List<DexReport> scan(File file) throws IOException {
+        return scan(file, CancellationToken.current());
+    }
+
+    /**
+     * Scans a DEX file or all DEX files in a (nested) archive, until the given
+     * token is cancelled.
+     *
+     * @param file  the DEX file or archive
+     * @param token the cancellation token
+     * @return one report for every DEX file, in the order of the archive
+     * entries
+     * @throws IOException                 if the file could not be read or a DEX
+     *                                     file is malformed or too large
+     * @throws OperationCancelledException if the token was cancelled
+     */
+    public List<DexReport> scan(File file, CancellationToken token) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return scan(in, file.getPath(), token);
+        }
+    }
+
+    /**
+     * Scans a DEX file or all DEX files in a (nested) archive that is read
+     * from the given stream. The stream is not closed.
+     *
+     * @param in     the content of the DEX file or archive
+     * @param source the name of the input used in the reports
+     * @return one report for every DEX file, in the order of the archive
+     * entries
+     * @throws IOException if the stream could not be read or a DEX file is
+     *                     malformed or too large
+     */
+    public List<DexReport> scan(InputStream in, String source) throws IOException {
+        return scan(in, source, CancellationToken.current());
+    }
+
+    /**
+     * Scans a DEX file or all DEX files in a (nested) archive that is read
+     * from the given stream, until the given token is cancelled. The stream
+     * is not closed.
+     *
+     * @param in     the content of the DEX file or archive
+     * @param source the name of the input used in the reports
+     * @param token  the cancellation token
+     * @return one report for every DEX file, in the order of the archive
+     * entries
+     * @throws IOException                 if the stream could not be read or a DEX
+     *                                     file is malformed or too large
+     * @throws OperationCancelledException if the token was cancelled, the DEX
+     *                                     buffer is wiped
+     */
+    public List<DexReport> scan(InputStream in, String source, CancellationToken token) throws IOException {
+        Scan scan = new Scan(token);
+        try {
+            scan.visit(in, source, 0);
+        } catch (OperationCancelledException e) {
+            Arrays.fill(scan.dex, (byte) 0);
+            throw e;
+        }
+        return scan.reports;
+    }
+
+    private static boolean isDex(byte[] magic, int length) {
+        return length == MAGIC_LENGTH && magic[0] == 'd' && magic[1] == 'e' && magic[2] == 'x' && magic[3] == '\n';
+    }
+
+    private static boolean isZip(byte[] magic, int length) {
+        return length == MAGIC_LENGTH && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+    }
+
+    /**
+     * The state of a single call to {@link #scan(InputStream, String)}.
+     */
+    private final class Scan {
+
+        final List<DexReport> reports = new ArrayList<>();
+
+        final CancellationToken token;
+
+        /**
+         * Reused for all DEX files, it grows up to the largest one.
+         */
+        byte[] dex = new byte[0];
+
+        Scan(CancellationToken token) {
+            this.token = token;
+        }
+
+        void visit(InputStream in, String source, int depth) throws IOException {
+            token.check();
+            byte[] magic = new byte[MAGIC_LENGTH];
+            int length = in.readNBytes(magic, 0, MAGIC_LENGTH);
+            if (isDex(magic, length)) {
+                scanDex(magic, in, source);
+            } else if (isZip(magic, length) && depth <= maxDepth) {
+                // the sequence closes every stream at its end, and closing the
+                // archive must not close the entry of the enclosing archive
+                InputStream content = new SequenceInputStream(new ByteArrayInputStream(magic, 0, length),
+                        new FilterInputStream(in) {
+                            @Override
+                            public void close() {
+                            }
+                        });
+                visitArchive(new BufferedInputStream(content, bufferSize), source, depth);
+            }
+        }
+
+        void visitArchive(InputStream in, String source, int depth) throws IOException {
+            // closing the archive releases its inflater
+            try (ZipInputStream archive = new ZipInputStream(in)) {
+                ZipEntry entry;
+                while ((entry = archive.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        visit(archive, source + '!' + entry.getName(), depth + 1);
+                    }
+                }
+            }
+        }
+
+        void scanDex(byte[] magic, InputStream in, String source) throws IOException {
+            System.arraycopy(magic, 0, ensureCapacity(MAGIC_LENGTH), 0, MAGIC_LENGTH);
+            int length = MAGIC_LENGTH;
+            while (true) {
+                if (length == dex.length) {
+                    // only grow the buffer if there is more content
+                    int next = in.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    ensureCapacity(length + 1)[length++] = (byte) next;
+                }
+                int count = in.read(dex, length, dex.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+                token.check();
+            }
+            reports.add(scanner.scan(ByteBuffer.wrap(dex, 0, length), source, token));
+        }
+
+        byte[] ensureCapacity(int capacity) throws IOException {
+            if (capacity > maxDexSize) {
+                throw new IOException("DEX file larger than " + maxDexSize + " bytes");
+            }
+            if (capacity > dex.length) {
+                long size = Math.max(Math.max(dex.length * 2L, capacity), bufferSize);
+                dex = Arrays.copyOf(dex, (int) Math.min(size, maxDexSize));
+            }
+            return dex;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        NestedArchiveScanner scanner = new NestedArchiveScanner();
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("-")) {
+                    files.add(new File(args[i]));
+                } else if (i + 1 >= args.length) {
+                    usage("Missing value for " + args[i]);
+                } else if (args[i].equals("-d")) {
+                    scanner.setMaxDepth(Integer.parseInt(args[++i]));
+                } else {
+                    usage("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        }
+        if (files.isEmpty()) {
+            usage("No input files");
+        }
+
+        for (File file : files) {
+            List<DexReport> suspicious = new ArrayList<>();
+            for (DexReport report : scanner.scan(file)) {
+                if (report.isSuspicious()) {
+                    suspicious.add(report);
+                }
+            }
+            if (suspicious.isEmpty()) {
+                System.out.println("[-] " + file + " does not contain any hidden zxxz-jar files");
+            } else {
+                System.out.println("[+] " + file + " contains hidden jar");
+                suspicious.forEach(System.out::println);
+            }
+        }
+    }
+
+    private static void usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println("Usage: NestedArchiveScanner [-d <max depth>] <file>...");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A <code>ScanCoordinator</code> spreads a large corpus of APK, JAR and DEX
+ * files over several local {@link ScanWorker} processes.
+ * <p>
+ * The files are split into shards of a few paths. Every worker process gets
+ * one shard at a time over its standard input and streams its results back
+ * over the standard output. Each worker has its own heap and file
+ * descriptors, so the throughput is not limited by a single JVM. The results
+ * of a path are passed to the {@link Listener} as soon as the path is done,
+ * in no particular order.
+ * <p>
+ * If a worker process dies, for example because of an
+ * {@link OutOfMemoryError} on an adversarial input, it is restarted and the
+ * unfinished paths of its shard are queued again. A path that was in progress
+ * during too many crashes is reported as an error. A worker that does not
+ * finish a path within the path timeout, for example because it blocks on a
+ * named pipe or a stalled network file system, is killed and handled like a
+ * crashed worker.
+ * <pre>{@code
+ * ScanCoordinator coordinator = new ScanCoordinator();
+ * coordinator.setWorkers(4);
+ * coordinator.addWorkerOption("-Xmx256m");
+ * coordinator.run(files, new ScanCoordinator.Listener() {
+ *     public void onReport(File file, DexReport report) { ... }
+ *     public void onError(File file, String message) { ... }
+ * });
+ * }</pre>
+ * The coordinator can be used from the command line as well, it prints all
+ * suspicious reports:
+ * <pre>
+ * ScanCoordinator [-w &lt;workers&gt;] [-s &lt;shard size&gt;] [-x &lt;worker heap&gt;] &lt;file or directory&gt;...
+ * </pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public class ScanCoordinator {
+
+    /**
+     * Receives the merged results of all workers. The methods are never called
+     * concurrently.
+     */
+    public interface Listener {
+
+        /**
+         * Called for every DEX file of a successfully scanned file.
+         *
+         * @param file   the scanned file
+         * @param report the report of one DEX file
+         */
+        void onReport(File file, DexReport report);
+
+        /**
+         * Called if a file could not be scanned.
+         *
+         * @param file    the file
+         * @param message the reason
+         */
+        void onError(File file, String message);
+    }
+
+    private final List<String> workerOptions = new ArrayList<>(Collections.singletonList("-XX:+ExitOnOutOfMemoryError"));
+
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private int workerThreads = 2;
+
+    private int shardSize = 16;
+
+    private int maxAttempts = 3;
+
+    private long pathTimeout = TimeUnit.MINUTES.toNanos(5);
+
+    private final AtomicInteger restarts = new AtomicInteger();
+
+    /**
+     * Sets the number of worker processes.
+     *
+     * @param workers the number of processes
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers < 1");
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the number of scan threads in every worker process.
+     *
+     * @param workerThreads the number of threads
+     */
+    public void setWorkerThreads(int workerThreads) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("workerThreads < 1");
+        }
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Sets the number of paths that are sent to a worker at once.
+     *
+     * @param shardSize the number of paths per shard
+     */
+    public void setShardSize(int shardSize) {
+        if (shardSize < 1) {
+            throw new IllegalArgumentException("shardSize < 1");
+        }
+        this.shardSize = shardSize;
+    }
+
+    /**
+     * Sets how often a path is tried before it is reported as an error,
+     * because the workers scanning it crashed.
+     *
+     * @param maxAttempts the number of attempts
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Sets how long a worker may scan a single path. If the timeout expires,
+     * the worker is killed and restarted, as if it crashed. The default is
+     * five minutes.
+     *
+     * @param timeout the timeout
+     * @param unit    the unit of the timeout
+     */
+    public void setPathTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout <= 0");
+        }
+        this.pathTimeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * Adds an option for the JVM of the worker processes, like
+     * <code>-Xmx256m</code>.
+     *
+     * @param option the JVM option
+     */
+    public void addWorkerOption(String option) {
+        workerOptions.add(Objects.requireNonNull(option));
+    }
+
+    /**
+     * @return how often worker processes were restarted since this
+     * coordinator was created
+     */
+    public int getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * Scans all files and waits until every file is done. Duplicate files
+     * are scanned once.
+     *
+     * @param files    the files to scan
+     * @param listener receives the results
+     * @throws IOException          if a worker process could not be started
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public void run(Collection<File> files, Listener listener) throws IOException, InterruptedException {
+        LinkedBlockingQueue<Shard> queue = new LinkedBlockingQueue<>();
+        Set<String> paths = new LinkedHashSet<>();
+        for (File file : files) {
+            String path = file.getPath();
+            if (path.indexOf('\t') >= 0 || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                listener.onError(file, "Unsupported file name");
+            } else {
+                paths.add(path);
+            }
+        }
+
+        List<String> shard = new ArrayList<>(shardSize);
+        for (String path : paths) {
+            shard.add(path);
+            if (shard.size() == shardSize) {
+                queue.add(new Shard(shard, 1));
+                shard = new ArrayList<>(shardSize);
+            }
+        }
+        if (!shard.isEmpty()) {
+            queue.add(new Shard(shard, 1));
+        }
+
+        AtomicInteger remaining = new AtomicInteger(paths.size());
+        List<WorkerThread> threads = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, queue.size()); i++) {
+            WorkerThread thread = new WorkerThread(i, queue, remaining, listener);
+            threads.add(thread);
+            thread.start();
+        }
+
+        IOException failure = null;
+        try {
+            for (WorkerThread thread : threads) {
+                thread.join();
+                if (thread.failure != null && failure == null) {
+                    failure = thread.failure;
+                }
+            }
+        } finally {
+            for (WorkerThread thread : threads) {
+                thread.interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Process startWorker() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(workerOptions);
+        command.add(ScanWorker.class.getName());
+        command.add("-t");
+        command.add(Integer.toString(workerThreads));
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * A group of paths and the number of the attempt to scan them.
+     */
+    private static final class Shard {
+
+        final List<String> paths;
+
+        final int attempt;
+
+        Shard(List<String> paths, int attempt) {
+            this.paths = paths;
+            this.attempt = attempt;
+        }
+    }
+
+    /**
+     * Feeds one worker process with shards and restarts it if it crashes.
+     */
+    private final class WorkerThread extends Thread {
+
+        private final LinkedBlockingQueue<Shard> queue;
+
+        private final AtomicInteger remaining;
+
+        private final Listener listener;
+
+        private Process process;
+
+        private Writer input;
+
+        private LinkedBlockingQueue<Optional<String>> output;
+
+        IOException failure;
+
+        WorkerThread(int index, LinkedBlockingQueue<Shard> queue, AtomicInteger remaining, Listener listener) {
+            super("scan-worker-" + index);
+            setDaemon(true);
+            this.queue = queue;
+            this.remaining = remaining;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (remaining.get() > 0) {
+                    Shard shard = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (shard != null) {
+                        scan(shard);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+                // no worker can be started, stop all other threads as well
+                remaining.set(0);
+            } catch (InterruptedException e) {
+                // the coordinator was interrupted
+            } finally {
+                stopWorker();
+            }
+        }
+
+        private void scan(Shard shard) throws IOException, InterruptedException {
+            if (process == null) {
+                process = startWorker();
+                input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+                output = new LinkedBlockingQueue<>();
+                new OutputReader(getName(), process.getInputStream(), output).start();
+            }
+
+            Map<String, List<DexReport>> pending = new LinkedHashMap<>();
+            boolean timedOut = false;
+            try {
+                for (String path : shard.paths) {
+                    pending.put(path, new ArrayList<>());
+                    input.write(path);
+                    input.write('\n');
+                }
+                input.flush();
+
+                // the worker scans the paths in order, every finished path
+                // starts the deadline of the next one
+                long deadline = System.nanoTime() + pathTimeout;
+                while (!pending.isEmpty()) {
+                    Optional<String> next = output.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        timedOut = true;
+                        break;
+                    }
+                    if (next.isEmpty()) {
+                        break;
+                    }
+                    String line = next.get();
+                    String[] fields = line.split("\t", -1);
+                    List<DexReport> reports = fields.length > 1 ? pending.get(fields[1]) : null;
+                    if (reports == null) {
+                        throw new IOException("Unexpected worker output: " + line);
+                    }
+                    switch (fields[0]) {
+                        case ScanWorker.REPORT:
+                            reports.add(ScanWorker.parse(fields));
+                            break;
+                        case ScanWorker.DONE:
+                            pending.remove(fields[1]);
+                            finish(fields[1], reports, null);
+                            deadline = System.nanoTime() + pathTimeout;
+                            break;
+                        case ScanWorker.ERROR:
+                            pending.remove(fields[1]);
+                            finish(fields[1], reports, fields.length > 2 ? fields[2] : "Unknown error");
+                            deadline = System.nanoTime() + pathTimeout;
+                            break;
+                        default:
+                            throw new IOException("Unexpected worker output: " + line);
+                    }
+                }
+            } catch (IOException e) {
+                // a crashed worker breaks the pipe or the protocol, handled below
+            }
+
+            if (!pending.isEmpty()) {
+                if (timedOut) {
+                    process.destroyForcibly();
+                }
+                stopWorker();
+                restarts.incrementAndGet();
+
+                // the worker scans the paths in order, so only the first
+                // pending path was in progress when the worker crashed
+                List<String> paths = new ArrayList<>(pending.keySet());
+                String current = paths.remove(0);
+                if (shard.attempt < maxAttempts) {
+                    queue.add(new Shard(Collections.singletonList(current), shard.attempt + 1));
+                } else if (timedOut) {
+                    finish(current, Collections.emptyList(), "Worker timed out on attempt " + maxAttempts);
+                } else {
+                    finish(current, Collections.emptyList(), "Worker crashed " + maxAttempts + " times");
+                }
+                if (!paths.isEmpty()) {
+                    queue.add(new Shard(paths, shard.attempt));
+                }
+            }
+        }
+
+        private void finish(String path, List<DexReport> reports, String error) {
+            File file = new File(path);
+            synchronized (listener) {
+                if (error != null) {
+                    listener.onError(file, error);
+                } else {
+                    for (DexReport report : reports) {
+                        listener.onReport(file, report);
+                    }
+                }
+            }
+            remaining.decrementAndGet();
+        }
+
+        private void stopWorker() {
+            if (process == null) {
+                return;
+            }
+            try {
+                input.close();
+                if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException | InterruptedException e) {
+                process.destroyForcibly();
+            }
+            process = null;
+        }
+    }
+
+    /**
+     * Moves the output lines of a worker process into a queue, so that they
+     * can be awaited with a timeout. The end of the output is marked with an
+     * empty {@link Optional}.
+     */
+    private static final class OutputReader extends Thread {
+
+        private final BufferedReader reader;
+
+        private final LinkedBlockingQueue<Optional<String>> lines;
+
+        OutputReader(String name, InputStream in, LinkedBlockingQueue<Optional<String>> lines) {
+            super(name + "-output");
+            setDaemon(true);
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            this.lines = lines;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = this.reader) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(Optional.of(line));
+                }
+            } catch (IOException e) {
+                // the worker process was killed
+            } finally {
+                lines.add(Optional.empty());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ScanCoordinator coordinator = new ScanCoordinator();
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("-")) {
+                    collect(new File(args[i]), files);
+                } else if (i + 1 >= args.length) {
+                    usage("Missing value for " + args[i]);
+                } else if (args[i].equals("-w")) {
+                    coordinator.setWorkers(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-s")) {
+                    coordinator.setShardSize(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-x")) {
+                    coordinator.addWorkerOption("-Xmx" + args[++i]);
+                } else {
+                    usage("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        }
+        if (files.isEmpty()) {
+            usage("No input files");
+        }
+
+        long start = System.nanoTime();
+        int[] counts = new int[2];
+        coordinator.run(files, new Listener() {
+            @Override
+            public void onReport(File file, DexReport report) {
+                if (report.isSuspicious()) {
+                    System.out.println(report);
+                    counts[0]++;
+                }
+            }
+
+            @Override
+            public void onError(File file, String message) {
+                System.err.println("[-] " + file + ": " + message);
+                counts[1]++;
+            }
+        });
+        System.out.printf("Scanned %d files in %d ms: %d suspicious DEX files, %d errors, %d restarts%n",
+                files.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), counts[0], counts[1],
+                coordinator.getRestarts());
+    }
+
+    private static void collect(File file, List<File> files) throws IOException {
+        if (!file.isDirectory()) {
+            files.add(file);
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            files.addAll(paths.filter(Files::isRegularFile)
+                    .filter(path -> path.toString().matches(".*\\.(apk|aab|aar|jar|zip|dex)"))
+                    .map(Path::toFile)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    private static void usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println("Usage: ScanCoordinator [-w <workers>] [-s <shard size>] [-x <worker heap>] "
+                + "<file or directory>...");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The worker process of a {@link ScanCoordinator}.
+ * <p>
+ * A worker reads one path per line from its standard input and scans it with
+ * a {@link DexScanner}. Every result is written as a line to the standard
+ * output, all fields separated by tabs:
+ * <pre>
+ * REPORT &lt;path&gt; &lt;source&gt; &lt;classes&gt; &lt;methods&gt; &lt;key count&gt; [key]...
+ *        [&lt;descriptor&gt; &lt;delegating methods&gt; &lt;name count&gt; [name]...]...
+ * DONE   &lt;path&gt;
+ * ERROR  &lt;path&gt; &lt;message&gt;
+ * </pre>
+ * Every path is finished with exactly one <code>DONE</code> or
+ * <code>ERROR</code> line, after all of its reports. The worker exits when its
+ * standard input is closed. Errors like an {@link OutOfMemoryError} are not
+ * caught, the coordinator restarts the worker instead.
+ * <pre>
+ * ScanWorker [-t &lt;threads&gt;]
+ * </pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class ScanWorker {
+
+    static final String REPORT = "REPORT";
+
+    static final String DONE = "DONE";
+
+    static final String ERROR = "ERROR";
+
+    private ScanWorker() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        DexScanner scanner = new DexScanner();
+        if (args.length == 2 && args[0].equals("-t")) {
+            scanner.setThreads(Integer.parseInt(args[1]));
+        } else if (args.length != 0) {
+            System.err.println("Usage: ScanWorker [-t <threads>]");
+            System.exit(1);
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)),
+                false, StandardCharsets.UTF_8);
+        String path;
+        while ((path = in.readLine()) != null) {
+            if (path.isEmpty()) {
+                continue;
+            }
+            try {
+                for (DexReport report : scanner.scan(new File(path))) {
+                    out.println(format(path, report));
+                }
+                out.println(DONE + '\t' + path);
+            } catch (IOException e) {
+                out.println(ERROR + '\t' + path + '\t' + String.valueOf(e.getMessage()).replaceAll("[\t\r\n]", " "));
+            }
+            out.flush();
+        }
+        out.flush();
+    }
+
+    /**
+     * Formats a report as a <code>REPORT</code> line.
+     */
+    static String format(String path, DexReport report) {
+        StringBuilder line = new StringBuilder(REPORT).append('\t').append(path)
+                .append('\t').append(report.getSource())
+                .append('\t').append(report.getClassCount())
+                .append('\t').append(report.getMethodCount())
+                .append('\t').append(report.getSecretKeys().size());
+        for (String key : report.getSecretKeys()) {
+            line.append('\t').append(key);
+        }
+        for (DexReport.WrapperClass wrapper : report.getWrappers()) {
+            line.append('\t').append(wrapper.getDescriptor())
+                    .append('\t').append(wrapper.getDelegatingMethods())
+                    .append('\t').append(wrapper.getEncryptedNames().size());
+            for (String name : wrapper.getEncryptedNames()) {
+                line.append('\t').append(name);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Parses the fields of a <code>REPORT</code> line, without the first two.
+     */
+    static DexReport parse(String[] fields) {
+        int index = 2;
+        String source = fields[index++];
+        int classCount = Integer.parseInt(fields[index++]);
+        int methodCount = Integer.parseInt(fields[index++]);
+        int keyCount = Integer.parseInt(fields[index++]);
+        List<String> keys = new ArrayList<>(Arrays.asList(fields).subList(index, index + keyCount));
+        index += keyCount;
+
+        List<DexReport.WrapperClass> wrappers = new ArrayList<>();
+        while (index < fields.length) {
+            String descriptor = fields[index++];
+            int delegating = Integer.parseInt(fields[index++]);
+            int nameCount = Integer.parseInt(fields[index++]);
+            List<String> names = new ArrayList<>(Arrays.asList(fields).subList(index, index + nameCount));
+            index += nameCount;
+            wrappers.add(new DexReport.WrapperClass(descriptor, names, delegating));
+        }
+        return new DexReport(source, classCount, methodCount, wrappers, keys);
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.scan;
+
+import io.github.matrixeditor.shjar.util.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A compact set of 64-bit fingerprints of known encrypted names, payload
+ * keys or any other signature strings.
+ * <p>
+ * Signatures are stored as fingerprints in a primitive open addressing table
+ * (linear probing) behind a Bloom filter. Most strings that are not part of the
+ * set are rejected by the Bloom filter with three bit tests. All membership
+ * checks are allocation free, so a scanner can test every string it finds:
+ * <pre>{@code
+ * SignatureSet.Builder builder = SignatureSet.builder();
+ * builder.add(ShadowJar.DEFAULT_SECRET_KEY);
+ * builder.build().writeTo(new File("signatures.bin"));
+ *
+ * SignatureSet signatures = SignatureSet.map(new File("signatures.bin"));
+ * if (signatures.contains(bytes, offset, length)) {
+ *     // ...
+ * }
+ * }</pre>
+ * Fingerprints can collide. With 64-bit fingerprints the chance of a false
+ * positive is about <code>n / 2^64</code> for a set of <code>n</code>
+ * signatures.
+ * <p>
+ * The file layout (big endian) is the following:
+ * <pre>
+ * u4   magic        'ZXSG'
+ * u4   version      1
+ * u4   count        number of signatures
+ * u4   bloom words  number of 64-bit words in the Bloom filter
+ * u4   table size   number of slots, a power of two
+ * u4   reserved
+ * u8[] bloom filter
+ * u8[] table        fingerprints, 0 marks an empty slot
+ * </pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class SignatureSet {
+
+    /**
+     * The magic number that starts every signature file.
+     */
+    public static final int MAGIC = 0x5A585347;
+
+    /**
+     * The current version of the signature file format.
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final long SEED = 0x7A78787A5349474EL;
+
+    private final LongBuffer bloom;
+
+    private final LongBuffer table;
+
+    private final int count;
+
+    private final int bloomMask;
+
+    private final int tableMask;
+
+    private SignatureSet(LongBuffer bloom, LongBuffer table, int count) {
+        this.bloom = bloom;
+        this.table = table;
+        this.count = count;
+        this.bloomMask = bloom.capacity() * 64 - 1;
+        this.tableMask = table.capacity() - 1;
+    }
+
+    /**
+     * Creates a new {@link Builder} for a signature set.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Loads a signature set from the given {@link File} by mapping it into
+     * memory.
+     *
+     * @param file the signature file
+     * @return the mapped signature set
+     * @throws IOException if the file could not be read or is not valid
+     */
+    public static SignatureSet map(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid signature file size: " + channel.size());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a signature file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported signature file version: " + buffer.getInt(4));
+        }
+        int count = buffer.getInt(8);
+        int bloomWords = buffer.getInt(12);
+        int tableSize = buffer.getInt(16);
+        if (Integer.bitCount(bloomWords) != 1 || Integer.bitCount(tableSize) != 1 || count >= tableSize
+                || HEADER_SIZE + 8L * (bloomWords + tableSize) != buffer.capacity()) {
+            throw new IOException("Corrupted signature file header");
+        }
+
+        buffer.position(HEADER_SIZE).limit(HEADER_SIZE + 8 * bloomWords);
+        LongBuffer bloom = buffer.slice().asLongBuffer();
+        buffer.limit(buffer.capacity()).position(HEADER_SIZE + 8 * bloomWords);
+        LongBuffer table = buffer.slice().asLongBuffer();
+        return new SignatureSet(bloom, table, count);
+    }
+
+    /**
+     * Computes the fingerprint of the given bytes.
+     *
+     * @param bytes  the signature bytes
+     * @param offset the start offset
+     * @param length the number of bytes
+     * @return the fingerprint, never <code>0</code>
+     */
+    public static long fingerprint(byte[] bytes, int offset, int length) {
+        return nonZero(Hashing.hash64(bytes, offset, length, SEED));
+    }
+
+    /**
+     * Computes the fingerprint of the given characters. For ASCII strings the
+     * result is the same as the fingerprint of their bytes.
+     *
+     * @param chars the signature characters
+     * @return the fingerprint, never <code>0</code>
+     */
+    public static long fingerprint(CharSequence chars) {
+        return nonZero(Hashing.hash64(chars, SEED));
+    }
+
+    /**
+     * Returns whether the given bytes are part of this set.
+     *
+     * @param bytes  the candidate bytes
+     * @param offset the start offset
+     * @param length the number of bytes
+     * @return <code>true</code> if the fingerprint of the bytes is known
+     */
+    public boolean contains(byte[] bytes, int offset, int length) {
+        return containsFingerprint(fingerprint(bytes, offset, length));
+    }
+
+    /**
+     * Returns whether the given string is part of this set.
+     *
+     * @param chars the candidate string
+     * @return <code>true</code> if the fingerprint of the string is known
+     */
+    public boolean contains(CharSequence chars) {
+        return containsFingerprint(fingerprint(chars));
+    }
+
+    /**
+     * Returns whether the given fingerprint is part of this set.
+     *
+     * @param fingerprint a value returned by one of the <code>fingerprint</code> methods
+     * @return <code>true</code> if the fingerprint is known
+     */
+    public boolean containsFingerprint(long fingerprint) {
+        if (count == 0 || !mightContain(bloom, bloomMask, fingerprint)) {
+            return false;
+        }
+
+        int slot = (int) Hashing.mix(fingerprint) & tableMask;
+        while (true) {
+            long value = table.get(slot);
+            if (value == fingerprint) {
+                return true;
+            }
+            if (value == 0) {
+                return false;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    /**
+     * Returns the number of signatures in this set.
+     *
+     * @return the number of signatures
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Writes this set to the given {@link File}.
+     *
+     * @param file the destination file
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 * (bloom.capacity() + table.capacity()));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count)
+                .putInt(bloom.capacity()).putInt(table.capacity()).putInt(0);
+        for (int i = 0; i < bloom.capacity(); i++) {
+            buffer.putLong(bloom.get(i));
+        }
+        for (int i = 0; i < table.capacity(); i++) {
+            buffer.putLong(table.get(i));
+        }
+        buffer.flip();
+
+        Path temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static boolean mightContain(LongBuffer bloom, int mask, long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32);
+        for (int i = 1; i <= 3; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bloom.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int ceilPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private static long nonZero(long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Collects signatures and creates an immutable {@link SignatureSet}.
+     */
+    public static final class Builder {
+
+        private long[] fingerprints = new long[64];
+
+        private int size;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a signature string, usually an encrypted (Base64) name or key.
+         *
+         * @param signature the signature
+         * @return this builder
+         */
+        public Builder add(CharSequence signature) {
+            return addFingerprint(fingerprint(signature));
+        }
+
+        /**
+         * Adds a signature given as bytes.
+         *
+         * @param bytes the signature
+         * @return this builder
+         */
+        public Builder add(byte[] bytes) {
+            return addFingerprint(fingerprint(bytes, 0, bytes.length));
+        }
+
+        /**
+         * Adds a precomputed fingerprint.
+         *
+         * @param fingerprint the fingerprint
+         * @return this builder
+         */
+        public Builder addFingerprint(long fingerprint) {
+            if (size == fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, size * 2);
+            }
+            fingerprints[size++] = nonZero(fingerprint);
+            return this;
+        }
+
+        /**
+         * Adds all signatures of an existing set.
+         *
+         * @param signatures the set to merge
+         * @return this builder
+         */
+        public Builder addAll(SignatureSet signatures) {
+            for (int i = 0; i < signatures.table.capacity(); i++) {
+                long value = signatures.table.get(i);
+                if (value != 0) {
+                    addFingerprint(value);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds every line of the given text file as a signature. Empty lines
+         * are ignored and only the text up to the first tab is used, so the
+         * name tables of the corpus generator can be read directly.
+         *
+         * @param file the text file
+         * @return this builder
+         * @throws IOException if an I/O error occurs
+         */
+        public Builder addLines(File file) throws IOException {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                int end = line.indexOf('\t');
+                String signature = (end < 0 ? line : line.substring(0, end)).trim();
+                if (!signature.isEmpty()) {
+                    add(signature);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Creates the signature set. The table is kept at most half full and the
+         * Bloom filter uses about 16 bits per signature.
+         *
+         * @return the new signature set
+         */
+        public SignatureSet build() {
+            long[] values = Arrays.copyOf(fingerprints, size);
+            Arrays.sort(values);
+            int unique = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (unique == 0 || values[unique - 1] != values[i]) {
+                    values[unique++] = values[i];
+                }
+            }
+
+            int tableSize = ceilPowerOfTwo(2 * unique + 1);
+            int bloomWords = ceilPowerOfTwo(unique / 4);
+            LongBuffer bloom = LongBuffer.allocate(bloomWords);
+            LongBuffer table = LongBuffer.allocate(tableSize);
+            int bloomMask = bloomWords * 64 - 1;
+            int tableMask = tableSize - 1;
+
+            for (int i = 0; i < unique; i++) {
+                long fingerprint = values[i];
+                int h1 = (int) fingerprint;
+                int h2 = (int) (fingerprint >>> 32);
+                for (int k = 1; k <= 3; k++) {
+                    int bit = (h1 + k * h2) & bloomMask;
+                    bloom.put(bit >>> 6, bloom.get(bit >>> 6) | (1L << bit));
+                }
+
+                int slot = (int) Hashing.mix(fingerprint) & tableMask;
+                while (table.get(slot) != 0) {
+                    slot = (slot + 1) & tableMask;
+                }
+                table.put(slot, fingerprint);
+            }
+            return new SignatureSet(bloom, table, unique);
+        }
+    }
+}
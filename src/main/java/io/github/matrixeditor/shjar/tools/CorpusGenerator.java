@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.tools;
+
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.crypto.ZxxZOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A <code>CorpusGenerator</code> creates synthetic ZxxZ payloads and encrypted
+ * name tables for load tests.
+ * <p>
+ * Every source JAR is encrypted several times under each configured key, so
+ * each payload has its own IV. The payloads are written in the format of the
+ * bundled <code>shadow.txt</code> file. The encryption streams from the source
+ * file through a {@link ZxxZOutputStream} and no full-size buffer is created.
+ * Work is spread over a thread pool, and every worker thread uses its own AES
+ * cipher and IV source.
+ * <pre>{@code
+ * CorpusGenerator generator = new CorpusGenerator(new File("corpus"));
+ * generator.addKey(ShadowJar.DEFAULT_SECRET_KEY);
+ * generator.addRandomKeys(3);
+ * generator.addPayload(new File("cache/1489418796403.jar"));
+ * generator.addSyntheticNames(1000);
+ * generator.setCopies(250);
+ * List<File> files = generator.generate();
+ * }</pre>
+ * The output directory contains one folder per key with the files
+ * <code>key.txt</code> (the encoded key), <code>names.txt</code> (tab separated
+ * encrypted and plain names) and the payloads.
+ * <p>
+ * The generator can be used from the command line as well:
+ * <pre>
+ * CorpusGenerator -o &lt;dir&gt; [-k &lt;encoded key&gt;]... [-r &lt;random keys&gt;]
+ *                 [-c &lt;copies&gt;] [-n &lt;synthetic names&gt;] [-t &lt;threads&gt;] [jar]...
+ * </pre>
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public class CorpusGenerator {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * One AES cipher for every worker thread, used for the name tables.
+     */
+    private static final ThreadLocal<Cipher> AES = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/CBC/PKCS5Padding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final File outputDirectory;
+
+    private final List<String> keys = new ArrayList<>();
+
+    private final List<File> payloads = new ArrayList<>();
+
+    private final List<String> names = new ArrayList<>();
+
+    private int copies = 1;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a new generator that writes all files to the given directory.
+     *
+     * @param outputDirectory the output directory
+     */
+    public CorpusGenerator(File outputDirectory) {
+        this.outputDirectory = Objects.requireNonNull(outputDirectory);
+    }
+
+    /**
+     * Adds an encoded secret key, like {@link io.github.matrixeditor.shjar.ShadowJar#DEFAULT_SECRET_KEY}.
+     *
+     * @param encodedKey the encoded secret key
+     * @throws IllegalArgumentException if the key could not be decoded
+     */
+    public void addKey(String encodedKey) {
+        ZxxZCipher.decodeXOR(encodedKey);
+        keys.add(encodedKey);
+    }
+
+    /**
+     * Adds the given number of new random keys.
+     *
+     * @param count the number of keys to create
+     */
+    public void addRandomKeys(int count) {
+        SecureRandom random = new SecureRandom();
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[16];
+            random.nextBytes(key);
+            keys.add(ZxxZCipher.encodeXOR(key));
+        }
+    }
+
+    /**
+     * Adds a file that will be encrypted under every key.
+     *
+     * @param payload the plain file, usually a JAR file
+     */
+    public void addPayload(File payload) {
+        if (!payload.isFile()) {
+            throw new IllegalArgumentException("Not a file: " + payload);
+        }
+        payloads.add(payload);
+    }
+
+    /**
+     * Adds plain class or method names that will be encrypted into the name
+     * table of every key.
+     *
+     * @param plainNames the names to encrypt
+     */
+    public void addNames(Collection<String> plainNames) {
+        names.addAll(plainNames);
+    }
+
+    /**
+     * Adds synthetic names in the style of the AdMob module, like
+     * <code>com.google.android.ads.zxxz.ab</code>, plus the method name
+     * <code>a</code>.
+     *
+     * @param count the number of class names to create
+     */
+    public void addSyntheticNames(int count) {
+        names.add("a");
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder("com.google.android.ads.zxxz.");
+            int value = i;
+            do {
+                name.append((char) ('a' + value % 26));
+                value /= 26;
+            } while (value > 0);
+            names.add(name.toString());
+        }
+    }
+
+    /**
+     * Sets how many payloads are created for every source file and key.
+     *
+     * @param copies the number of copies
+     */
+    public void setCopies(int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("copies < 1");
+        }
+        this.copies = copies;
+    }
+
+    /**
+     * Sets the number of worker threads.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Writes all payloads and name tables.
+     *
+     * @return all created files
+     * @throws IOException          if a file could not be written
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public List<File> generate() throws IOException, InterruptedException {
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("No keys configured");
+        }
+
+        List<Callable<File>> tasks = new ArrayList<>();
+        for (int k = 0; k < keys.size(); k++) {
+            String encodedKey = keys.get(k);
+            SecretKey key = new SecretKeySpec(ZxxZCipher.decodeXOR(encodedKey), "AES");
+            File directory = new File(outputDirectory, String.format("key-%03d", k));
+            Files.createDirectories(directory.toPath());
+            Files.write(new File(directory, "key.txt").toPath(), encodedKey.getBytes(StandardCharsets.US_ASCII));
+
+            if (!names.isEmpty()) {
+                tasks.add(() -> writeNames(new File(directory, "names.txt"), key));
+            }
+            for (File payload : payloads) {
+                String baseName = payload.getName().replaceFirst("\\.[^.]*$", "");
+                for (int i = 0; i < copies; i++) {
+                    File destination = new File(directory, String.format("%s-%05d.txt", baseName, i));
+                    tasks.add(() -> encrypt(payload, destination, key));
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<File> files = new ArrayList<>(tasks.size());
+            for (Future<File> future : executor.invokeAll(tasks)) {
+                try {
+                    files.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException("Could not generate payload", cause);
+                }
+            }
+            return files;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Encrypts the source file as a stream into the Base64 encoded destination.
+     *
+     * @param source      the plain file
+     * @param destination the file to create
+     * @param key         the decoded AES key
+     * @return the destination file
+     * @throws IOException              if an I/O error occurs
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    public static File encrypt(File source, File destination, SecretKey key)
+            throws IOException, GeneralSecurityException {
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new ZxxZOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(destination), CHUNK_SIZE), key)) {
+            in.transferTo(out);
+        }
+        return destination;
+    }
+
+    private File writeNames(File destination, SecretKey key) throws IOException, GeneralSecurityException {
+        Cipher aes = AES.get();
+        Base64.Encoder encoder = Base64.getEncoder();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(destination), StandardCharsets.UTF_8))) {
+            for (String name : names) {
+                byte[] plain = name.getBytes(StandardCharsets.UTF_8);
+                byte[] iv = ZxxZCipher.generateIV();
+                aes.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+
+                byte[] encrypted = new byte[iv.length + aes.getOutputSize(plain.length)];
+                System.arraycopy(iv, 0, encrypted, 0, iv.length);
+                aes.doFinal(plain, 0, plain.length, encrypted, iv.length);
+                writer.write(encoder.encodeToString(encrypted));
+                writer.write('\t');
+                writer.write(name);
+                writer.write('\n');
+            }
+        }
+        return destination;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File output = null;
+        List<String[]> options = new ArrayList<>();
+        List<File> payloads = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                payloads.add(new File(args[i]));
+            } else if (i + 1 >= args.length) {
+                usage("Missing value for " + args[i]);
+            } else if (args[i].equals("-o")) {
+                output = new File(args[++i]);
+            } else {
+                options.add(new String[]{args[i], args[++i]});
+            }
+        }
+        if (output == null) {
+            usage("No output directory given");
+        }
+
+        CorpusGenerator generator = new CorpusGenerator(output);
+        try {
+            for (String[] option : options) {
+                switch (option[0]) {
+                    case "-k":
+                        generator.addKey(option[1]);
+                        break;
+                    case "-r":
+                        generator.addRandomKeys(Integer.parseInt(option[1]));
+                        break;
+                    case "-c":
+                        generator.setCopies(Integer.parseInt(option[1]));
+                        break;
+                    case "-n":
+                        generator.addSyntheticNames(Integer.parseInt(option[1]));
+                        break;
+                    case "-t":
+                        generator.setThreads(Integer.parseInt(option[1]));
+                        break;
+                    default:
+                        usage("Unknown option " + option[0]);
+                }
+            }
+            payloads.forEach(generator::addPayload);
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        }
+
+        long start = System.nanoTime();
+        List<File> files = generator.generate();
+        System.out.printf("Generated %d files in %d ms%n", files.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static void usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println("Usage: CorpusGenerator -o <dir> [-k <encoded key>]... [-r <random keys>]\n"
+                + "                       [-c <copies>] [-n <synthetic names>] [-t <threads>] [jar]...");
+        System.exit(1);
+    }
+}
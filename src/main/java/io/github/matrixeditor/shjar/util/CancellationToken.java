@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.util;
+
+import io.github.matrixeditor.shjar.metrics.Counter;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <code>CancellationToken</code> stops long running decryptions, archive
+ * reads and scans, either on request or when a deadline has passed.
+ * <p>
+ * Operations check the token between chunks of their work and throw an
+ * {@link OperationCancelledException} if it was cancelled. All buffers with
+ * decrypted or decompressed content that were created by the operation are
+ * wiped before the exception is thrown.
+ * <pre>{@code
+ * CancellationToken token = CancellationToken.withTimeout(250, TimeUnit.MILLISECONDS);
+ * try {
+ *     jar.read(file, token);
+ * } catch (OperationCancelledException e) {
+ *     // jar holds no content now
+ * }
+ * }</pre>
+ * Methods without a token parameter use the {@link #current() current} token
+ * of the calling thread, which is set by {@link #enter()}. This is how the
+ * token reaches code behind interfaces like {@link javax.crypto.Cipher}.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class CancellationToken {
+
+    /**
+     * A token that is never cancelled.
+     */
+    public static final CancellationToken NONE = new CancellationToken(Long.MAX_VALUE, false);
+
+    private static final ThreadLocal<CancellationToken> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+    /**
+     * The deadline in {@link System#nanoTime()} units.
+     */
+    private final long deadline;
+
+    private final boolean hasDeadline;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new token without a deadline, which is only cancelled by
+     * {@link #cancel()}.
+     */
+    public CancellationToken() {
+        this(0, false);
+    }
+
+    private CancellationToken(long deadline, boolean hasDeadline) {
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+    }
+
+    /**
+     * Creates a new token that expires after the given time.
+     *
+     * @param timeout the time until the deadline
+     * @param unit    the unit of the timeout
+     * @return a new token
+     */
+    public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+        return withDeadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Creates a new token that expires at the given time.
+     *
+     * @param deadline the deadline in {@link System#nanoTime()} units
+     * @return a new token
+     */
+    public static CancellationToken withDeadline(long deadline) {
+        return new CancellationToken(deadline, true);
+    }
+
+    /**
+     * Returns the token of the calling thread.
+     *
+     * @return the token set by {@link #enter()}, or {@link #NONE}
+     */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this token the {@link #current() current} token of the calling
+     * thread until the returned scope is closed.
+     *
+     * @return the scope that restores the previous token
+     */
+    public Scope enter() {
+        CancellationToken previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> CURRENT.set(previous);
+    }
+
+    /**
+     * Cancels all operations that use this token. Has no effect on
+     * {@link #NONE}.
+     */
+    public void cancel() {
+        if (this != NONE) {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Returns whether this token was cancelled or its deadline has passed.
+     *
+     * @return <code>true</code> if operations should stop
+     */
+    public boolean isCancelled() {
+        return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * Returns the time until the deadline.
+     *
+     * @return the remaining nanoseconds, <code>0</code> if the token was
+     * cancelled or {@link Long#MAX_VALUE} if there is no deadline
+     */
+    public long getRemainingNanos() {
+        if (cancelled) {
+            return 0;
+        }
+        return hasDeadline ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Throws an exception if this token was cancelled.
+     *
+     * @throws OperationCancelledException if operations should stop
+     */
+    public void check() {
+        if (this == NONE) {
+            return;
+        }
+        if (cancelled) {
+            Metrics.increment(Counter.CANCELLATIONS, 1);
+            throw new OperationCancelledException("Operation cancelled", false);
+        }
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            Metrics.increment(Counter.CANCELLATIONS, 1);
+            throw new OperationCancelledException("Deadline exceeded", true);
+        }
+    }
+
+    /**
+     * The duration in which a token is the {@link #current() current} token
+     * of a thread.
+     */
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.util;
+
+/**
+ * Small, allocation free 64-bit hash functions used by the lookup tables of
+ * this module.
+ * <p>
+ * The functions are not cryptographically secure. They are meant to spread
+ * short identifiers, such as encrypted class names, evenly over a table. A
+ * {@link CharSequence} is hashed by the low 8 bits of each character, so that
+ * hashing an ASCII {@link String} gives the same result as hashing its bytes.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class Hashing {
+
+    private static final long PRIME_1 = 0x9E3779B97F4A7C15L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private Hashing() {
+    }
+
+    /**
+     * Hashes all bytes of the given array with the provided seed.
+     *
+     * @param bytes the data to hash
+     * @param seed  the seed value
+     * @return the 64-bit hash value
+     */
+    public static long hash64(byte[] bytes, long seed) {
+        return hash64(bytes, 0, bytes.length, seed);
+    }
+
+    /**
+     * Hashes <code>length</code> bytes of the given array starting at
+     * <code>offset</code> with the provided seed.
+     *
+     * @param bytes  the data to hash
+     * @param offset the start offset
+     * @param length the number of bytes to hash
+     * @param seed   the seed value
+     * @return the 64-bit hash value
+     */
+    public static long hash64(byte[] bytes, int offset, int length, long seed) {
+        long h = seed ^ (length * PRIME_1);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * PRIME_2;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Hashes the low 8 bits of every character of the given sequence with
+     * the provided seed.
+     *
+     * @param chars the characters to hash
+     * @param seed  the seed value
+     * @return the 64-bit hash value
+     */
+    public static long hash64(CharSequence chars, long seed) {
+        int length = chars.length();
+        long h = seed ^ (length * PRIME_1);
+        for (int i = 0; i < length; i++) {
+            h = (h ^ (chars.charAt(i) & 0xFF)) * PRIME_2;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Applies the final avalanche step of <i>MurmurHash3</i> to the given value.
+     *
+     * @param h the value to mix
+     * @return the mixed value
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
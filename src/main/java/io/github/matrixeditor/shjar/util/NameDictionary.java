@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.util;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A compact, append-only store for class and method names.
+ * <p>
+ * All names are encoded into one growing byte array and are referenced by an
+ * <code>int</code> handle, so a stored name costs a few bytes instead of a
+ * {@link String} object with its own array. Two kinds of names are supported:
+ * <ul>
+ *     <li>{@link #intern(String) Interned} names, like decrypted class names.
+ *     Equal names share one handle, and the package prefix (everything up to
+ *     the last dot, like <code>com.google.android.ads.zxxz.</code>) is stored
+ *     once and referenced by all names in that package.</li>
+ *     <li>{@link #store(String) Stored} names, like encrypted class names,
+ *     which are rarely equal. Canonical Base64 text is kept in its decoded
+ *     form, which saves a quarter of its size.</li>
+ * </ul>
+ * Strings are only created on request by {@link #get(int)}, and
+ * {@link #matches(int, CharSequence)} compares a stored name without creating
+ * one. Adding names is synchronized, reading is lock free.
+ * <p>
+ * Names are never removed from a dictionary. Every
+ * {@link io.github.matrixeditor.shjar.ShadowJar} therefore has its own
+ * dictionary, which is dropped together with its
+ * {@link io.github.matrixeditor.shjar.SharedClass} objects when the jar is
+ * reset or closed.
+ * <p>
+ * Every entry is encoded as <code>varint prefix + 1</code> (or
+ * <code>0</code>), <code>varint length &lt;&lt; 2 | kind</code> and the bytes
+ * of the name in the given kind (Latin-1, UTF-16 or decoded Base64).
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class NameDictionary {
+
+    private static final int LATIN1 = 0;
+
+    private static final int UTF16 = 1;
+
+    private static final int BASE64 = 2;
+
+    private static final long SEED = 0x7A78787A4E414D45L;
+
+    private static final char[] BASE64_CHARS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private volatile byte[] arena = new byte[4096];
+
+    private int size;
+
+    /**
+     * Handles + 1 of all interned names, 0 marks an empty slot.
+     */
+    private int[] table = new int[256];
+
+    private int count;
+
+    /**
+     * Adds the given name and shares its package prefix and equal names.
+     *
+     * @param name the name to add
+     * @return the handle of the name
+     */
+    public synchronized int intern(String name) {
+        int slot = findSlot(name);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+
+        // prefixes are interned as well, so packages share their parents
+        // a leading dot is part of the name, not an empty prefix
+        int dot = name.lastIndexOf('.', name.length() - 2);
+        int prefix = dot > 0 ? intern(name.substring(0, dot + 1)) : -1;
+        int handle = append(prefix, name, dot > 0 ? dot + 1 : 0);
+
+        // the prefix may have grown the table
+        slot = findSlot(name);
+        table[slot] = handle + 1;
+        if (++count * 2 > table.length) {
+            rehash();
+        }
+        return handle;
+    }
+
+    /**
+     * Adds the given name without looking for an equal one.
+     *
+     * @param name the name to add
+     * @return the handle of the name
+     */
+    public synchronized int store(String name) {
+        if (name.length() % 4 == 0 && name.length() > 0) {
+            try {
+                byte[] decoded = Base64.getDecoder().decode(name);
+                if (Base64.getEncoder().encodeToString(decoded).equals(name)) {
+                    int handle = size;
+                    ensureCapacity(decoded.length + 6);
+                    writeVarint(0);
+                    writeVarint(decoded.length << 2 | BASE64);
+                    System.arraycopy(decoded, 0, arena, size, decoded.length);
+                    size += decoded.length;
+                    return handle;
+                }
+            } catch (IllegalArgumentException e) {
+                // not Base64, stored as text
+            }
+        }
+        return append(-1, name, 0);
+    }
+
+    /**
+     * Creates a {@link String} of the name with the given handle.
+     *
+     * @param handle the handle returned by {@link #intern(String)} or {@link #store(String)}
+     * @return the name
+     */
+    public String get(int handle) {
+        byte[] data = arena;
+        long prefix = readVarint(data, handle);
+        long header = readVarint(data, (int) prefix);
+        StringBuilder builder = new StringBuilder();
+        if ((prefix >>> 32) != 0) {
+            builder.append(get((int) (prefix >>> 32) - 1));
+        }
+
+        int length = (int) (header >>> 34);
+        int offset = (int) header;
+        switch ((int) (header >>> 32) & 3) {
+            case LATIN1:
+                for (int i = 0; i < length; i++) {
+                    builder.append((char) (data[offset + i] & 0xFF));
+                }
+                break;
+            case UTF16:
+                for (int i = 0; i < length; i++) {
+                    builder.append((char) ((data[offset + 2 * i] & 0xFF) << 8 | (data[offset + 2 * i + 1] & 0xFF)));
+                }
+                break;
+            default:
+                for (int i = 0; i < encodedLength(length); i++) {
+                    builder.append(base64Char(data, offset, length, i));
+                }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Compares the name with the given handle to a character sequence without
+     * creating a {@link String}.
+     *
+     * @param handle the handle of the name
+     * @param value  the characters to compare
+     * @return <code>true</code> if the name equals the given characters
+     */
+    public boolean matches(int handle, CharSequence value) {
+        return compare(arena, handle, value, 0) == value.length();
+    }
+
+    /**
+     * @return the number of bytes used by this dictionary
+     */
+    public synchronized long getMemoryUsage() {
+        return arena.length + 4L * table.length;
+    }
+
+    /**
+     * Compares the name at the given handle with the characters of the value
+     * starting at <code>from</code>.
+     *
+     * @return the index after the last matched character, or <code>-1</code>
+     */
+    private static int compare(byte[] data, int handle, CharSequence value, int from) {
+        long prefix = readVarint(data, handle);
+        long header = readVarint(data, (int) prefix);
+        if ((prefix >>> 32) != 0) {
+            from = compare(data, (int) (prefix >>> 32) - 1, value, from);
+            if (from < 0) {
+                return -1;
+            }
+        }
+
+        int length = (int) (header >>> 34);
+        int offset = (int) header;
+        int kind = (int) (header >>> 32) & 3;
+        int chars = kind == BASE64 ? encodedLength(length) : length;
+        if (from + chars > value.length()) {
+            return -1;
+        }
+        for (int i = 0; i < chars; i++) {
+            char c;
+            if (kind == LATIN1) {
+                c = (char) (data[offset + i] & 0xFF);
+            } else if (kind == UTF16) {
+                c = (char) ((data[offset + 2 * i] & 0xFF) << 8 | (data[offset + 2 * i + 1] & 0xFF));
+            } else {
+                c = base64Char(data, offset, length, i);
+            }
+            if (c != value.charAt(from + i)) {
+                return -1;
+            }
+        }
+        return from + chars;
+    }
+
+    private static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Returns the Base64 character at <code>index</code> of the encoded form
+     * of <code>length</code> bytes.
+     */
+    private static char base64Char(byte[] data, int offset, int length, int index) {
+        int group = index / 4 * 3;
+        int bits = (data[offset + group] & 0xFF) << 16;
+        if (group + 1 < length) {
+            bits |= (data[offset + group + 1] & 0xFF) << 8;
+        }
+        if (group + 2 < length) {
+            bits |= data[offset + group + 2] & 0xFF;
+        }
+        int part = index % 4;
+        // padding: one byte in the group gives two characters, two bytes give three
+        if (part > length - group) {
+            return '=';
+        }
+        return BASE64_CHARS[(bits >>> (18 - 6 * part)) & 0x3F];
+    }
+
+    private int append(int prefix, String name, int from) {
+        int length = name.length() - from;
+        boolean latin1 = true;
+        for (int i = from; i < name.length() && latin1; i++) {
+            latin1 = name.charAt(i) <= 0xFF;
+        }
+
+        int handle = size;
+        ensureCapacity(10 + 2 * length);
+        writeVarint(prefix + 1);
+        writeVarint(length << 2 | (latin1 ? LATIN1 : UTF16));
+        byte[] data = arena;
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(from + i);
+            if (latin1) {
+                data[size++] = (byte) c;
+            } else {
+                data[size++] = (byte) (c >>> 8);
+                data[size++] = (byte) c;
+            }
+        }
+        return handle;
+    }
+
+    private int findSlot(String name) {
+        int mask = table.length - 1;
+        int slot = (int) Hashing.hash64(name, SEED) & mask;
+        while (table[slot] != 0 && !matches(table[slot] - 1, name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        for (int entry : old) {
+            if (entry != 0) {
+                table[findSlot(get(entry - 1))] = entry;
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > arena.length) {
+            // grow by half, the arena is the largest object of the dictionary
+            long capacity = Math.max(arena.length + (arena.length >> 1), (long) size + extra);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("NameDictionary is full");
+            }
+            arena = Arrays.copyOf(arena, (int) capacity);
+        }
+    }
+
+    private void writeVarint(int value) {
+        byte[] data = arena;
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Reads a varint at the given position.
+     *
+     * @return the value in the upper and the position after it in the lower 32 bits
+     */
+    private static long readVarint(byte[] data, int position) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[position++];
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (long) result << 32 | position;
+            }
+        }
+    }
+}
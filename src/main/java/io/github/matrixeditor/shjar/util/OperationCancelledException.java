@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown if an operation was stopped by its {@link CancellationToken}.
+ * <p>
+ * The exception is unchecked, so it passes through interfaces like
+ * {@link java.io.InputStream} and {@link javax.crypto.Cipher}. The buffers of
+ * the stopped operation have been wiped when it is thrown.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public class OperationCancelledException extends CancellationException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean deadlineExceeded;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param message          the detail message
+     * @param deadlineExceeded whether the deadline of the token has passed
+     */
+    public OperationCancelledException(String message, boolean deadlineExceeded) {
+        super(message);
+        this.deadlineExceeded = deadlineExceeded;
+    }
+
+    /**
+     * Returns whether the operation was stopped by a deadline instead of an
+     * explicit {@link CancellationToken#cancel()}.
+     *
+     * @return <code>true</code> if the deadline has passed
+     */
+    public boolean isDeadlineExceeded() {
+        return deadlineExceeded;
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2022 MatrixEditor
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.matrixeditor.shjar.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only index of a ZIP archive that is stored in a {@link ByteBuffer}.
+ * <p>
+ * Only the central directory is parsed. The entries stay in their stored or
+ * deflated form inside the buffer and are decompressed on request, so the
+ * archive occupies no more memory than its compressed size. ZIP64 archives
+ * are not supported.
+ * <p>
+ * The sizes in the central directory are not trusted: entries larger than
+ * {@link #getMaxEntrySize()} are rejected, and the output of a deflated entry
+ * grows with the inflated data instead of being allocated up front.
+ *
+ * @author MatrixEditor
+ * @since 1.1
+ */
+public final class ZipIndex {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    private static final int CEN_SIGNATURE = 0x02014b50;
+
+    private static final int LOC_SIGNATURE = 0x04034b50;
+
+    private static final int EOCD_SIZE = 22;
+
+    private static final int CEN_SIZE = 46;
+
+    private static final int LOC_SIZE = 30;
+
+    /**
+     * The number of bytes inflated between two checks of the cancellation
+     * token.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The highest compression ratio that deflate can reach.
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * The default value of {@link #getMaxEntrySize()}.
+     */
+    public static final long DEFAULT_MAX_ENTRY_SIZE = 128L << 20;
+
+    private final ByteBuffer archive;
+
+    private final Map<String, Entry> entries;
+
+    private volatile long maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+    private ZipIndex(ByteBuffer archive, Map<String, Entry> entries) {
+        this.archive = archive;
+        this.entries = entries;
+    }
+
+    /**
+     * Parses the central directory of the given archive. The content starts
+     * at the current position of the buffer, which is not modified.
+     *
+     * @param buffer the ZIP archive
+     * @return the index of all entries
+     * @throws IOException if the archive is malformed
+     */
+    public static ZipIndex parse(ByteBuffer buffer) throws IOException {
+        ByteBuffer archive = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int eocd = archive.limit() - EOCD_SIZE;
+            int lowest = Math.max(0, eocd - 0xFFFF);
+            while (eocd >= lowest && archive.getInt(eocd) != EOCD_SIGNATURE) {
+                eocd--;
+            }
+            if (eocd < lowest) {
+                throw new IOException("No ZIP end of central directory found");
+            }
+
+            int count = archive.getShort(eocd + 10) & 0xFFFF;
+            long offset = archive.getInt(eocd + 16) & 0xFFFFFFFFL;
+            if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+                throw new IOException("ZIP64 archives are not supported");
+            }
+
+            Map<String, Entry> entries = new LinkedHashMap<>(count * 2);
+            int position = (int) offset;
+            for (int i = 0; i < count; i++) {
+                if (archive.getInt(position) != CEN_SIGNATURE) {
+                    throw new IOException("Invalid central directory entry at " + position);
+                }
+                int nameLength = archive.getShort(position + 28) & 0xFFFF;
+                byte[] name = new byte[nameLength];
+                archive.duplicate().position(position + CEN_SIZE).get(name);
+                Entry entry = new Entry(new String(name, StandardCharsets.UTF_8),
+                        archive.getShort(position + 8) & 0xFFFF,
+                        archive.getShort(position + 10) & 0xFFFF,
+                        archive.getInt(position + 16),
+                        archive.getInt(position + 20) & 0xFFFFFFFFL,
+                        archive.getInt(position + 24) & 0xFFFFFFFFL,
+                        archive.getInt(position + 42) & 0xFFFFFFFFL);
+                entries.put(entry.name, entry);
+                position += CEN_SIZE + nameLength + (archive.getShort(position + 30) & 0xFFFF)
+                        + (archive.getShort(position + 32) & 0xFFFF);
+            }
+            return new ZipIndex(archive, Collections.unmodifiableMap(entries));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Malformed ZIP archive", e);
+        }
+    }
+
+    /**
+     * @return the names of all entries in the order of the central directory
+     */
+    public Set<String> getNames() {
+        return entries.keySet();
+    }
+
+    /**
+     * Returns the entry with the given name.
+     *
+     * @param name the entry name, like <code>classes.dex</code>
+     * @return the entry or <code>null</code> if there is no such entry
+     */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Sets the largest decompressed size of an entry that {@link #read(Entry)}
+     * accepts.
+     *
+     * @param maxEntrySize the maximum size in bytes
+     */
+    public void setMaxEntrySize(long maxEntrySize) {
+        if (maxEntrySize < 0 || maxEntrySize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Invalid maximum entry size: " + maxEntrySize);
+        }
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Returns the largest decompressed size of an entry that {@link #read(Entry)}
+     * accepts.
+     *
+     * @return the maximum size in bytes, {@link #DEFAULT_MAX_ENTRY_SIZE} by default
+     */
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Returns the raw, possibly compressed data of an entry as a view of the
+     * archive buffer.
+     *
+     * @param entry an entry of this index
+     * @return a read-only view of the compressed data
+     * @throws IOException if the local header is malformed
+     */
+    public ByteBuffer getRawData(Entry entry) throws IOException {
+        try {
+            int header = (int) entry.localHeaderOffset;
+            if (archive.getInt(header) != LOC_SIGNATURE) {
+                throw new IOException("Invalid local header of " + entry.name);
+            }
+            int start = header + LOC_SIZE + (archive.getShort(header + 26) & 0xFFFF)
+                    + (archive.getShort(header + 28) & 0xFFFF);
+            if (start + entry.compressedSize > archive.limit()) {
+                throw new IOException("Truncated entry " + entry.name);
+            }
+            ByteBuffer data = archive.duplicate();
+            data.position(start).limit(start + (int) entry.compressedSize);
+            return data.slice().asReadOnlyBuffer();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Malformed ZIP archive", e);
+        }
+    }
+
+    /**
+     * Decompresses an entry until the {@link CancellationToken#current() current}
+     * cancellation token of the calling thread is cancelled.
+     *
+     * @param entry an entry of this index
+     * @return the decompressed content
+     * @throws IOException if the entry is malformed, encrypted, larger than
+     *                     {@link #getMaxEntrySize()} or uses an unsupported
+     *                     compression method
+     */
+    public byte[] read(Entry entry) throws IOException {
+        return read(entry, CancellationToken.current());
+    }
+
+    /**
+     * Decompresses an entry until the given token is cancelled.
+     *
+     * @param entry an entry of this index
+     * @param token the cancellation token
+     * @return the decompressed content
+     * @throws IOException                 if the entry is malformed, encrypted,
+     *                                     larger than {@link #getMaxEntrySize()} or
+     *                                     uses an unsupported compression method
+     * @throws OperationCancelledException if the token was cancelled, the
+     *                                     partial content is wiped
+     */
+    public byte[] read(Entry entry, CancellationToken token) throws IOException {
+        token.check();
+        if ((entry.flags & 1) != 0) {
+            throw new IOException("Encrypted entries are not supported: " + entry.name);
+        }
+        if (entry.size > maxEntrySize) {
+            throw new IOException("Entry too large: " + entry.name + " (" + entry.size + " bytes)");
+        }
+
+        ByteBuffer data = getRawData(entry);
+        byte[] content;
+        if (entry.method == 0) {
+            if (entry.compressedSize != entry.size) {
+                throw new IOException("Invalid size of stored entry " + entry.name);
+            }
+            content = new byte[(int) entry.size];
+            data.get(content);
+        } else if (entry.method == 8) {
+            content = inflate(entry, data, token);
+        } else {
+            throw new IOException("Unsupported compression method " + entry.method + " of " + entry.name);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != entry.crc) {
+            throw new IOException("CRC mismatch of " + entry.name);
+        }
+        return content;
+    }
+
+    /**
+     * Inflates a deflated entry. The output starts small and grows up to the
+     * declared size, and the entry is rejected if the inflated data does not
+     * end exactly there.
+     */
+    private static byte[] inflate(Entry entry, ByteBuffer data, CancellationToken token) throws IOException {
+        if (entry.size > entry.compressedSize * MAX_DEFLATE_RATIO + CHUNK_SIZE) {
+            throw new IOException("Invalid size of deflated entry " + entry.name);
+        }
+        byte[] content = new byte[(int) Math.min(entry.size, Math.max(CHUNK_SIZE, 4 * entry.compressedSize))];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            int count = 0;
+            while (!inflater.finished()) {
+                if (count == content.length) {
+                    if (count == entry.size) {
+                        // there must be nothing left but the end of the stream
+                        if (inflater.inflate(new byte[1]) > 0 || !inflater.finished()) {
+                            throw new IOException("Invalid size of deflated entry " + entry.name);
+                        }
+                        break;
+                    }
+                    byte[] larger = Arrays.copyOf(content, (int) Math.min(entry.size, 2L * content.length));
+                    Arrays.fill(content, (byte) 0);
+                    content = larger;
+                }
+                int n = inflater.inflate(content, count, Math.min(CHUNK_SIZE, content.length - count));
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += n;
+                token.check();
+            }
+            if (count != entry.size || !inflater.finished()) {
+                throw new IOException("Invalid size of deflated entry " + entry.name);
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflated entry " + entry.name, e);
+        } catch (OperationCancelledException e) {
+            Arrays.fill(content, (byte) 0);
+            throw e;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * An entry of the central directory.
+     */
+    public static final class Entry {
+
+        private final String name;
+
+        private final int flags;
+
+        private final int method;
+
+        private final int crc;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        private final long localHeaderOffset;
+
+        Entry(String name, int flags, int method, int crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        /**
+         * @return the name of the entry
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the compression method, <code>0</code> (stored) or <code>8</code> (deflated)
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return the size of the compressed data
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * @return the size of the decompressed data
+         */
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + compressedSize + " -> " + size + " bytes)";
+        }
+    }
+}
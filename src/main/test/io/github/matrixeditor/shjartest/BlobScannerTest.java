@@ -0,0 +1,268 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.crypto.ZxxZOutputStream;
+import io.github.matrixeditor.shjar.scan.BlobReport;
+import io.github.matrixeditor.shjar.scan.BlobScanner;
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class BlobScannerTest {
+
+    private static final String KEY = ShadowJar.DEFAULT_SECRET_KEY;
+
+    public static void main(String[] args) throws Exception {
+        String payload = createPayload();
+        byte[] random = new byte[210];
+        new Random(7).nextBytes(random);
+        String decoy = Base64.getEncoder().encodeToString(random);
+
+        BlobScanner scanner = new BlobScanner();
+
+        // the key in .text must not be found, only string sections are read
+        byte[] elf = createElf(KEY + "\0", decoy + "\0" + payload + "\0hello\0", "\0libc.so\0" + KEY + "\0");
+        BlobReport report = scanner.scan(ByteBuffer.wrap(elf), "libads.so");
+        System.out.println(report);
+        expect(report, "elf", BlobReport.Finding.Kind.PAYLOAD, ".rodata", BlobReport.Finding.Kind.SECRET_KEY,
+                ".dynstr");
+        long sections = decoy.length() + payload.length() + 8 + KEY.length() + 10;
+        if (report.getScannedBytes() != sections) {
+            throw new IllegalStateException("Scanned more than the string sections: " + report.getScannedBytes());
+        }
+
+        byte[] arsc = createArsc(Arrays.asList("res/layout/main.xml", KEY), Arrays.asList("app_name", payload));
+        report = scanner.scan(ByteBuffer.wrap(arsc), "resources.arsc");
+        System.out.println(report);
+        expect(report, "arsc", BlobReport.Finding.Kind.SECRET_KEY, "string pool", BlobReport.Finding.Kind.PAYLOAD,
+                "string pool");
+
+        File apk = File.createTempFile("app", ".apk");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(apk))) {
+                write(out, "classes.dex", DexScannerTest.createDex(1, 1));
+                write(out, "resources.arsc", arsc);
+                writeStored(out, "lib/arm64-v8a/libads.so", elf);
+                write(out, "assets/config.json", ("{\"k\":\"" + KEY + "\"}").getBytes(StandardCharsets.US_ASCII));
+                write(out, "assets/clean.txt", decoy.getBytes(StandardCharsets.US_ASCII));
+            }
+            List<BlobReport> reports = scanner.scan(apk);
+            reports.forEach(System.out::println);
+            if (reports.size() != 4 || reports.stream().filter(BlobReport::isSuspicious).count() != 3) {
+                throw new IllegalStateException("Unexpected reports: " + reports);
+            }
+
+            // the stored library is scanned in place, the deflated table is limited
+            scanner.setMaxEntrySize(arsc.length - 1);
+            try {
+                scanner.scan(apk);
+                throw new IllegalStateException("Entry size limit was ignored");
+            } catch (IOException e) {
+                System.out.println("Rejected: " + e.getMessage());
+            }
+            scanner.setMaxEntrySize(arsc.length);
+            if (scanner.scan(apk).size() != 4) {
+                throw new IllegalStateException("Entry at the size limit was rejected");
+            }
+        } finally {
+            apk.delete();
+        }
+
+        // throughput of the classifier on text with many short Base64 runs
+        byte[] text = new byte[32 << 20];
+        Random rnd = new Random(1);
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) (rnd.nextInt(16) == 0 ? ' ' : 'a' + rnd.nextInt(26));
+        }
+        for (int i = 0; i < 3; i++) {
+            scanner.scan(ByteBuffer.wrap(text), "warm-up");
+        }
+        long start = System.nanoTime();
+        report = scanner.scan(ByteBuffer.wrap(text), "text");
+        long time = System.nanoTime() - start;
+        System.out.printf("Scanned %d MB in %d ms (%.0f MB/s)%n", text.length >> 20, time / 1000000,
+                (text.length / 1048576.0) / (time / 1e9));
+        if (report.isSuspicious()) {
+            throw new IllegalStateException("False positive: " + report);
+        }
+
+        CancellationToken cancelled = new CancellationToken();
+        cancelled.cancel();
+        try {
+            scanner.scan(ByteBuffer.wrap(text), "text", cancelled);
+            throw new IllegalStateException("Scan was not cancelled");
+        } catch (OperationCancelledException e) {
+            System.out.println("Scan: " + e.getMessage());
+        }
+    }
+
+    private static void expect(BlobReport report, String format, Object... findings) {
+        if (!report.getFormat().equals(format) || report.getFindings().size() != findings.length / 2) {
+            throw new IllegalStateException("Unexpected report: " + report);
+        }
+        for (int i = 0; i < findings.length; i += 2) {
+            BlobReport.Finding finding = report.getFindings().get(i / 2);
+            if (finding.getKind() != findings[i] || !finding.getSection().equals(findings[i + 1])
+                    || !finding.getSecretKey().equals(KEY)) {
+                throw new IllegalStateException("Unexpected finding: " + finding);
+            }
+        }
+    }
+
+    private static void write(ZipOutputStream out, String name, byte[] content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static void writeStored(ZipOutputStream out, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static String createPayload() throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(jar)) {
+            write(out, "classes.dex", DexScannerTest.createDex(1, 1));
+        }
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = new ZxxZOutputStream(encrypted,
+                new SecretKeySpec(ZxxZCipher.decodeXOR(KEY), "AES"))) {
+            out.write(jar.toByteArray());
+        }
+        return encrypted.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Creates a 64-bit ELF file with the sections .text, .rodata, .dynstr,
+     * .bss and .shstrtab.
+     */
+    private static byte[] createElf(String text, String rodata, String dynstr) {
+        String[] names = {"", ".text", ".rodata", ".dynstr", ".bss", ".shstrtab"};
+        StringBuilder shstrtab = new StringBuilder();
+        int[] nameOffsets = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            nameOffsets[i] = shstrtab.length();
+            shstrtab.append(names[i]).append('\0');
+        }
+        byte[][] contents = {new byte[0], ascii(text), ascii(rodata), ascii(dynstr), new byte[0],
+                ascii(shstrtab.toString())};
+        int[] types = {0, 1, 1, 3, 8, 3};
+
+        int dataSize = 0;
+        for (byte[] content : contents) {
+            dataSize += content.length;
+        }
+        ByteBuffer elf = ByteBuffer.allocate(64 + dataSize + names.length * 64).order(ByteOrder.LITTLE_ENDIAN);
+        elf.put(new byte[]{0x7F, 'E', 'L', 'F', 2, 1, 1});
+        elf.putShort(0x10, (short) 3);
+        elf.putShort(0x12, (short) 0xB7);
+        elf.putLong(0x28, 64 + dataSize);
+        elf.putShort(0x34, (short) 64);
+        elf.putShort(0x3A, (short) 64);
+        elf.putShort(0x3C, (short) names.length);
+        elf.putShort(0x3E, (short) (names.length - 1));
+
+        int offset = 64;
+        for (int i = 0; i < names.length; i++) {
+            elf.position(offset);
+            elf.put(contents[i]);
+            int header = 64 + dataSize + i * 64;
+            elf.putInt(header, nameOffsets[i]);
+            elf.putInt(header + 4, types[i]);
+            elf.putLong(header + 0x18, offset);
+            elf.putLong(header + 0x20, types[i] == 8 ? 4096 : contents[i].length);
+            offset += contents[i].length;
+        }
+        return elf.array();
+    }
+
+    /**
+     * Creates a resource table with a UTF-16 global string pool and a package
+     * with a UTF-8 key string pool.
+     */
+    private static byte[] createArsc(List<String> globalStrings, List<String> keyStrings) {
+        byte[] global = createStringPool(globalStrings, false);
+        byte[] keys = createStringPool(keyStrings, true);
+
+        ByteBuffer pkg = ByteBuffer.allocate(288 + keys.length).order(ByteOrder.LITTLE_ENDIAN);
+        pkg.putShort((short) 0x0200).putShort((short) 288).putInt(pkg.capacity()).putInt(0x7F);
+        pkg.position(288);
+        pkg.put(keys);
+
+        ByteBuffer table = ByteBuffer.allocate(12 + global.length + pkg.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        table.putShort((short) 0x0002).putShort((short) 12).putInt(table.capacity()).putInt(1);
+        table.put(global).put(pkg.array());
+        return table.array();
+    }
+
+    private static byte[] createStringPool(List<String> strings, boolean utf8) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[strings.size()];
+        for (int i = 0; i < strings.size(); i++) {
+            offsets[i] = data.size();
+            String value = strings.get(i);
+            if (utf8) {
+                writeLength8(data, value.length());
+                writeLength8(data, value.length());
+                data.writeBytes(ascii(value));
+                data.write(0);
+            } else {
+                data.write(value.length());
+                data.write(value.length() >> 8);
+                data.writeBytes(value.getBytes(StandardCharsets.UTF_16LE));
+                data.write(0);
+                data.write(0);
+            }
+        }
+        while (data.size() % 4 != 0) {
+            data.write(0);
+        }
+
+        int stringsStart = 28 + offsets.length * 4;
+        ByteBuffer pool = ByteBuffer.allocate(stringsStart + data.size()).order(ByteOrder.LITTLE_ENDIAN);
+        pool.putShort((short) 0x0001).putShort((short) 28).putInt(pool.capacity())
+                .putInt(offsets.length).putInt(0).putInt(utf8 ? 1 << 8 : 0).putInt(stringsStart).putInt(0);
+        for (int offset : offsets) {
+            pool.putInt(offset);
+        }
+        pool.put(data.toByteArray());
+        return pool.array();
+    }
+
+    private static void writeLength8(ByteArrayOutputStream out, int length) {
+        if (length > 0x7F) {
+            out.write(0x80 | length >> 8);
+        }
+        out.write(length & 0xFF);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.crypto.ZxxZOutputStream;
+import io.github.matrixeditor.shjar.scan.DexScanner;
+import io.github.matrixeditor.shjar.util.CancellationToken;
+import io.github.matrixeditor.shjar.util.OperationCancelledException;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class CancellationTest {
+
+    private static final int PAYLOAD_SIZE = 48 << 20;
+
+    public static void main(String[] args) throws Exception {
+        File payload = File.createTempFile("payload", ".txt");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            byte[] content = new byte[PAYLOAD_SIZE];
+            new Random(42).nextBytes(content);
+            try (OutputStream out = new ZxxZOutputStream(new FileOutputStream(payload),
+                    new SecretKeySpec(ZxxZCipher.decodeXOR(ShadowJar.DEFAULT_SECRET_KEY), "AES"))) {
+                out.write(content);
+            }
+
+            ShadowJar jar = ShadowJar.getInstance();
+            long start = System.nanoTime();
+            jar.read(payload, CancellationToken.NONE);
+            System.out.printf("Full decryption: %d ms%n", (System.nanoTime() - start) / 1000000);
+            if (jar.getContentLength() != PAYLOAD_SIZE) {
+                throw new IllegalStateException("Wrong content length: " + jar.getContentLength());
+            }
+
+            // in memory, through ZxxZCipher
+            expectCancelled("Deadline (in memory)", jar, payload,
+                    CancellationToken.withTimeout(5, TimeUnit.MILLISECONDS), true);
+
+            // streamed into a spill file, through ZxxZInputStream
+            jar.setMemoryBudget(0);
+            expectCancelled("Deadline (spilled)", jar, payload,
+                    CancellationToken.withTimeout(5, TimeUnit.MILLISECONDS), true);
+
+            CancellationToken token = new CancellationToken();
+            scheduler.schedule(token::cancel, 5, TimeUnit.MILLISECONDS);
+            expectCancelled("Cancel (spilled)", jar, payload, token, false);
+
+            jar.setMemoryBudget(Long.MAX_VALUE);
+            jar.read(payload);
+            if (jar.getContentLength() != PAYLOAD_SIZE) {
+                throw new IllegalStateException("Could not read after cancellation");
+            }
+            jar.close();
+
+            DexScanner scanner = new DexScanner();
+            CancellationToken cancelled = new CancellationToken();
+            cancelled.cancel();
+            try {
+                scanner.scan(ByteBuffer.wrap(DexScannerTest.createDex(2, 2000)), "host.dex", cancelled);
+                throw new IllegalStateException("Scan was not cancelled");
+            } catch (OperationCancelledException e) {
+                System.out.println("Scan: " + e.getMessage());
+            }
+        } finally {
+            scheduler.shutdownNow();
+            payload.delete();
+        }
+    }
+
+    private static void expectCancelled(String name, ShadowJar jar, File payload, CancellationToken token,
+                                        boolean deadline) throws Exception {
+        long start = System.nanoTime();
+        try {
+            jar.read(payload, token);
+            throw new IllegalStateException(name + ": read was not cancelled");
+        } catch (OperationCancelledException e) {
+            System.out.printf("%s: %s after %d ms%n", name, e.getMessage(), (System.nanoTime() - start) / 1000000);
+            if (e.isDeadlineExceeded() != deadline) {
+                throw new IllegalStateException(name + ": wrong reason " + e.getMessage());
+            }
+        }
+        if (jar.getContentLength() != 0 || jar.isSpilled()) {
+            throw new IllegalStateException(name + ": content was not released");
+        }
+    }
+}
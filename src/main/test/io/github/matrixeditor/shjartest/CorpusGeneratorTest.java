@@ -0,0 +1,75 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.SharedClass;
+import io.github.matrixeditor.shjar.tools.CorpusGenerator;
+
+import javax.crypto.Cipher;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class CorpusGeneratorTest {
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException, InterruptedException {
+        File source = File.createTempFile("source", ".jar");
+        source.delete();
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))) {
+            jar.writeSelf(source.getPath());
+        }
+
+        Path output = Files.createTempDirectory("corpus");
+        try {
+            CorpusGenerator generator = new CorpusGenerator(output.toFile());
+            generator.addKey(ShadowJar.DEFAULT_SECRET_KEY);
+            generator.addRandomKeys(2);
+            generator.addPayload(source);
+            generator.addSyntheticNames(30);
+            generator.setCopies(4);
+            List<File> files = generator.generate();
+
+            // the ZxxZ cipher must read payloads written by the generator and vice versa
+            ShadowJar defaultJar = ShadowJar.getInstance();
+            Cipher cipher = defaultJar.getCipherInstance();
+            cipher.init(Cipher.ENCRYPT_MODE, defaultJar.getDecodedSecret());
+            String encrypted = new String(cipher.doFinal(Files.readAllBytes(source.toPath())), StandardCharsets.US_ASCII);
+            files.add(Files.writeString(output.resolve("cipher.txt"), encrypted).toFile());
+            Files.writeString(output.resolve("key.txt"), ShadowJar.DEFAULT_SECRET_KEY);
+            System.out.println("Generated " + files.size() + " files");
+
+            byte[] expected = Files.readAllBytes(source.toPath());
+            for (File file : files) {
+                String key = Files.readString(file.toPath().resolveSibling("key.txt"));
+                if (file.getName().equals("names.txt")) {
+                    ShadowJar jar = ShadowJar.getInstance(key);
+                    for (String line : Files.readAllLines(file.toPath())) {
+                        String[] entry = line.split("\t");
+                        SharedClass cls = jar.addSharedClass(entry[0], entry[0]);
+                        if (!entry[1].equals(cls.getSharedClass())) {
+                            throw new IllegalStateException("Name mismatch: " + cls);
+                        }
+                    }
+                    continue;
+                }
+
+                try (ShadowJar jar = ShadowJar.open(key, file)) {
+                    if (!ByteBuffer.wrap(expected).equals(jar.getContent())) {
+                        throw new IllegalStateException("Payload mismatch: " + file);
+                    }
+                }
+            }
+        } finally {
+            source.delete();
+            try (Stream<Path> paths = Files.walk(output)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
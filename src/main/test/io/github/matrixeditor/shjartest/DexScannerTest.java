@@ -0,0 +1,211 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.scan.DexReport;
+import io.github.matrixeditor.shjar.scan.DexScanner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DexScannerTest {
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException, InterruptedException {
+        DexScanner scanner = new DexScanner();
+
+        File hidden = File.createTempFile("hidden", ".jar");
+        hidden.delete();
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))) {
+            jar.writeSelf(hidden.getPath());
+        }
+        try {
+            List<DexReport> reports = scanner.scan(hidden);
+            System.out.println(reports);
+            if (reports.size() != 1 || reports.get(0).getClassCount() == 0) {
+                throw new IllegalStateException("classes.dex of the hidden JAR was not scanned");
+            }
+        } finally {
+            hidden.delete();
+        }
+
+        // P000004 has the names and the lookup in a() but Method.invoke() in b()
+        DexReport report = scanner.scan(ByteBuffer.wrap(createDex(3, 2)), "host.dex");
+        System.out.println(report);
+        if (report.getClassCount() != 5 || report.getWrappers().size() != 3 || report.getSecretKeys().size() != 1) {
+            throw new IllegalStateException("Unexpected report: " + report);
+        }
+        for (int i = 0; i < 3; i++) {
+            DexReport.WrapperClass wrapper = report.getWrappers().get(i);
+            List<String> expected = Arrays.asList(SharedClassTest.values[i]);
+            if (!wrapper.getEncryptedNames().equals(expected) || wrapper.getDelegatingMethods() != 1) {
+                throw new IllegalStateException("Unexpected wrapper: " + wrapper);
+            }
+        }
+
+        // a multidex APK with two large DEX files
+        File apk = File.createTempFile("host", ".apk");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(apk))) {
+            for (String name : new String[]{"classes.dex", "classes2.dex", "assets/other.dex"}) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(createDex(5000, 30000));
+                out.closeEntry();
+            }
+        }
+        try {
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                List<DexReport> reports = scanner.scan(apk);
+                long time = System.nanoTime() - start;
+                if (reports.size() != 2 || reports.get(1).getWrappers().size() != 5000) {
+                    throw new IllegalStateException("Unexpected reports: " + reports);
+                }
+                System.out.printf("Scanned %d classes in %.2f ms%n",
+                        reports.get(0).getClassCount() + reports.get(1).getClassCount(), time / 1e6);
+            }
+        } finally {
+            apk.delete();
+        }
+    }
+
+    /**
+     * Creates a DEX file with wrapper classes that load encrypted names, pass
+     * them to a static lookup and call Method.invoke() in one method, and
+     * plain classes. Every second plain class does the lookup in one method
+     * and calls Method.invoke() in another, the others load no encrypted names.
+     */
+    static byte[] createDex(int wrappers, int plain) {
+        TreeSet<String> stringSet = new TreeSet<>(Arrays.asList("Ljava/lang/Object;", "Ljava/lang/reflect/Method;",
+                "invoke", "a", "b", "hello", ShadowJar.DEFAULT_SECRET_KEY));
+        List<String> classes = new ArrayList<>();
+        for (int i = 0; i < wrappers + plain; i++) {
+            classes.add(String.format("Lcom/example/%s%06d;", i < wrappers ? "W" : "P", i));
+        }
+        stringSet.addAll(classes);
+        for (int i = 0; i < Math.min(wrappers + plain, SharedClassTest.values.length); i++) {
+            stringSet.addAll(Arrays.asList(SharedClassTest.values[i]));
+        }
+        List<String> strings = new ArrayList<>(stringSet);
+        Map<String, Integer> stringIds = new HashMap<>();
+        for (String string : strings) {
+            stringIds.put(string, stringIds.size());
+        }
+        List<String> types = new ArrayList<>(classes);
+        types.add("Ljava/lang/Object;");
+        types.add("Ljava/lang/reflect/Method;");
+        types.sort(Comparator.comparingInt(stringIds::get));
+        Map<String, Integer> typeIds = new HashMap<>();
+        for (String type : types) {
+            typeIds.put(type, typeIds.size());
+        }
+
+        int methods = 2 + 2 * classes.size();
+        int stringIdsOff = 0x70;
+        int typeIdsOff = stringIdsOff + strings.size() * 4;
+        int methodIdsOff = typeIdsOff + types.size() * 4;
+        int classDefsOff = methodIdsOff + methods * 8;
+        ByteBuffer dex = ByteBuffer.allocate(classDefsOff + classes.size() * 32 + (strings.size() + classes.size()) * 128)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        dex.put("dex\n035\0".getBytes(StandardCharsets.US_ASCII));
+        dex.putInt(36, 0x70).putInt(40, 0x12345678);
+        dex.putInt(56, strings.size()).putInt(60, stringIdsOff);
+        dex.putInt(64, types.size()).putInt(68, typeIdsOff);
+        dex.putInt(88, methods).putInt(92, methodIdsOff);
+        dex.putInt(96, classes.size()).putInt(100, classDefsOff);
+
+        dex.position(classDefsOff + classes.size() * 32);
+        for (int i = 0; i < strings.size(); i++) {
+            byte[] bytes = strings.get(i).getBytes(StandardCharsets.US_ASCII);
+            dex.putInt(stringIdsOff + i * 4, dex.position());
+            putUleb128(dex, bytes.length);
+            dex.put(bytes).put((byte) 0);
+        }
+        for (int i = 0; i < types.size(); i++) {
+            dex.putInt(typeIdsOff + i * 4, stringIds.get(types.get(i)));
+        }
+        dex.putShort(methodIdsOff, (short) (int) typeIds.get("Ljava/lang/reflect/Method;"))
+                .putInt(methodIdsOff + 4, stringIds.get("invoke"));
+        dex.putShort(methodIdsOff + 8, (short) (int) typeIds.get("Ljava/lang/Object;"))
+                .putInt(methodIdsOff + 12, stringIds.get("a"));
+
+        for (int c = 0; c < classes.size(); c++) {
+            int type = typeIds.get(classes.get(c));
+            int methodA = 2 + 2 * c;
+            dex.putShort(methodIdsOff + methodA * 8, (short) type).putInt(methodIdsOff + methodA * 8 + 4, stringIds.get("a"));
+            dex.putShort(methodIdsOff + methodA * 8 + 8, (short) type).putInt(methodIdsOff + methodA * 8 + 12, stringIds.get("b"));
+
+            // a(): loads the names, looks them up and calls Method.invoke() in
+            // wrappers, b(): calls Method.invoke() followed by payloads
+            int codeA = align(dex);
+            dex.position(codeA + 16);
+            boolean split = c >= wrappers && (c - wrappers) % 2 == 1;
+            if (c < wrappers || split) {
+                String[] names = SharedClassTest.values[c % SharedClassTest.values.length];
+                putConstString(dex, 0, stringIds.get(names[0]));
+                putConstString(dex, 1, stringIds.get(names[1]));
+                dex.putShort((short) 0x2071).putShort((short) 1).putShort((short) 0x10);
+                dex.putShort((short) 0x000c);
+                if (!split) {
+                    dex.putShort((short) 0x206e).putShort((short) 0).putShort((short) 0x10);
+                }
+            } else {
+                putConstString(dex, 0, stringIds.get("hello"));
+            }
+            dex.putShort((short) 0x0e);
+            dex.putInt(codeA + 12, (dex.position() - codeA - 16) / 2);
+
+            int codeB = align(dex);
+            dex.position(codeB + 16);
+            dex.putShort((short) 0x206e).putShort((short) 0).putShort((short) 0x10);
+            dex.putShort((short) 0x0e);
+            dex.putShort((short) 0x0100).putShort((short) 2).putInt(0).putInt(2).putInt(4);
+            dex.putShort((short) 0x0300).putShort((short) 1).putInt(3).put(new byte[]{0x1a, 0x1b, 0x6e, 0});
+            dex.putInt(codeB + 12, (dex.position() - codeB - 16) / 2);
+
+            int classData = dex.position();
+            putUleb128(dex, 0);
+            putUleb128(dex, 0);
+            putUleb128(dex, 1);
+            putUleb128(dex, 1);
+            putUleb128(dex, methodA);
+            putUleb128(dex, 0x9);
+            putUleb128(dex, codeA);
+            putUleb128(dex, methodA + 1);
+            putUleb128(dex, 0x1);
+            putUleb128(dex, codeB);
+
+            int classDef = classDefsOff + c * 32;
+            dex.putInt(classDef, type).putInt(classDef + 8, typeIds.get("Ljava/lang/Object;"))
+                    .putInt(classDef + 24, classData);
+        }
+        dex.putInt(32, dex.position());
+        return Arrays.copyOf(dex.array(), dex.position());
+    }
+
+    private static void putConstString(ByteBuffer dex, int register, int stringIdx) {
+        if (stringIdx > 0xFFFF) {
+            dex.putShort((short) (register << 8 | 0x1b)).putInt(stringIdx);
+        } else {
+            dex.putShort((short) (register << 8 | 0x1a)).putShort((short) stringIdx);
+        }
+    }
+
+    private static int align(ByteBuffer dex) {
+        dex.position((dex.position() + 3) & ~3);
+        return dex.position();
+    }
+
+    private static void putUleb128(ByteBuffer dex, int value) {
+        while ((value & ~0x7F) != 0) {
+            dex.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        dex.put((byte) value);
+    }
+}
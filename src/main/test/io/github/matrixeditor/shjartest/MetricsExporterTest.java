@@ -0,0 +1,252 @@
+package io.github.matrixeditor.shjartest;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.metrics.Counter;
+import io.github.matrixeditor.shjar.metrics.HistogramSnapshot;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.MetricsExporter;
+import io.github.matrixeditor.shjar.metrics.Operation;
+import io.github.matrixeditor.shjar.metrics.SamplingMetricsRecorder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MetricsExporterTest {
+
+    private static final int THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+        // values of all threads are merged on read
+        SamplingMetricsRecorder recorder = new SamplingMetricsRecorder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Random random = new Random(i);
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    recorder.record(Operation.AES, 1_000_000 + random.nextInt(1_000_000));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        HistogramSnapshot snapshot = recorder.getSnapshot(Operation.AES);
+        System.out.println("Merged: " + snapshot);
+        if (snapshot.getCount() != THREADS * 100_000L || snapshot.getMax() >= 2_000_000
+                || Math.abs(snapshot.getValueAtQuantile(0.5) - 1_500_000) > 50_000) {
+            throw new IllegalStateException("Unexpected histogram: " + snapshot);
+        }
+
+        // histograms of terminated threads are folded, not kept per thread
+        long before = usedMemory();
+        for (int i = 0; i < 2000; i++) {
+            Thread thread = new Thread(() -> {
+                for (Operation operation : Operation.values()) {
+                    recorder.record(operation, 1000);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        long retained = usedMemory() - before;
+        snapshot = recorder.getSnapshot(Operation.READ);
+        System.out.printf("Retained after 2000 threads: %d KB, %s%n", retained >> 10, snapshot);
+        if (snapshot.getCount() != 2000 || recorder.getSnapshot(Operation.AES).getCount() != THREADS * 100_000L + 2000
+                || retained > 16 << 20) {
+            throw new IllegalStateException("Histograms of terminated threads were kept");
+        }
+
+        // local stand-in for a collector, the first request fails
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/metrics", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                if (requests.getAndIncrement() == 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                } else {
+                    received.add(body);
+                    exchange.sendResponseHeaders(204, -1);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+
+        SamplingMetricsRecorder live = new SamplingMetricsRecorder();
+        URL endpoint = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+        MetricsExporter exporter = new MetricsExporter(live, MetricsExporter.http(endpoint));
+        Metrics.setRecorder(live);
+        try {
+            exporter.start(50, TimeUnit.MILLISECONDS);
+            ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"));
+            File output = File.createTempFile("output", ".jar");
+            for (int i = 0; i < 20; i++) {
+                jar.read(new File("shadow.txt"));
+                output.delete();
+                jar.writeSelf(output.getPath());
+            }
+            output.delete();
+            jar.close();
+
+            // the intervals add up to all operations, including the one
+            // of the failed request
+            StringBuilder bodies = new StringBuilder();
+            String body;
+            while ((sum(bodies, "READ") < 21 || sum(bodies, "WRITE_SELF") < 20)
+                    && (body = received.poll(5, TimeUnit.SECONDS)) != null) {
+                bodies.append(body);
+            }
+            System.out.print("Received:\n" + bodies);
+            if (exporter.getLastFailure() == null) {
+                throw new IllegalStateException("First request did not fail");
+            }
+            if (sum(bodies, "READ") != 21 || sum(bodies, "WRITE_SELF") != 20
+                    || !bodies.toString().contains("\"DECRYPT_CALLS\":21")) {
+                throw new IllegalStateException("Unexpected export: " + bodies);
+            }
+        } finally {
+            Metrics.setRecorder(null);
+            exporter.close();
+            server.stop(0);
+        }
+
+        // unchecked failures of the sink do not stop the schedule
+        AtomicInteger exports = new AtomicInteger();
+        exporter = new MetricsExporter(new SamplingMetricsRecorder(), lines -> {
+            if (exports.incrementAndGet() == 1) {
+                throw new IllegalStateException("broken sink");
+            }
+        });
+        exporter.start(20, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 250 && exports.get() < 3; i++) {
+            Thread.sleep(20);
+        }
+        exporter.close();
+        if (exports.get() < 3 || !(exporter.getLastFailure() instanceof IllegalStateException)) {
+            throw new IllegalStateException("Exports stopped after failure: " + exports.get());
+        }
+
+        // rolling file
+        File file = File.createTempFile("metrics", ".jsonl");
+        SamplingMetricsRecorder counters = new SamplingMetricsRecorder();
+        exporter = new MetricsExporter(counters, MetricsExporter.rollingFile(file, 1024, 2));
+        try {
+            for (int i = 0; i < 20; i++) {
+                counters.increment(Counter.DECRYPT_CALLS, 1);
+                exporter.export();
+            }
+            File first = new File(file.getPath() + ".1");
+            File second = new File(file.getPath() + ".2");
+            if (!first.exists() || !second.exists() || new File(file.getPath() + ".3").exists()
+                    || file.length() > 1024 || first.length() > 1024) {
+                throw new IllegalStateException("Files were not rolled");
+            }
+            String last = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            if (!last.substring(last.lastIndexOf("{\"time\"")).contains("\"DECRYPT_CALLS\":20,")) {
+                throw new IllegalStateException("Unexpected file content: " + last);
+            }
+        } finally {
+            for (int i = 0; i <= 2; i++) {
+                new File(i == 0 ? file.getPath() : file.getPath() + "." + i).delete();
+            }
+        }
+
+        measureOverhead();
+    }
+
+    /**
+     * Adds up the samples of an operation in all exported lines.
+     */
+    private static long sum(CharSequence lines, String operation) {
+        Matcher matcher = Pattern.compile("\"operation\":\"" + operation + "\",\"sampleRate\":1,\"samples\":(\\d+)")
+                .matcher(lines);
+        long samples = 0;
+        while (matcher.find()) {
+            samples += Long.parseLong(matcher.group(1));
+        }
+        return samples;
+    }
+
+    /**
+     * Estimates the overhead of the recorder under full load from the cost of
+     * a single measurement and the number of measurements per read.
+     */
+    private static void measureOverhead() throws Exception {
+        SamplingMetricsRecorder recorder = new SamplingMetricsRecorder();
+        ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"));
+        File input = new File("shadow.txt");
+        for (int i = 0; i < 2000; i++) {
+            jar.read(input);
+        }
+
+        int reads = 5000;
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            jar.read(input);
+        }
+        double readTime = (double) (System.nanoTime() - start) / reads;
+
+        Metrics.setRecorder(recorder);
+        long measurements = 0;
+        long sampled = 0;
+        double[] measurementTime = new double[2];
+        try {
+            for (int i = 0; i < reads; i++) {
+                jar.read(input);
+            }
+            for (Operation operation : Operation.values()) {
+                measurements += recorder.getSnapshot(operation).getCount();
+            }
+
+            for (int rate = 1, i = 0; rate <= 16; rate *= 16, i++) {
+                recorder.setSampleRate(rate);
+                int calls = 10_000_000;
+                start = System.nanoTime();
+                for (int j = 0; j < calls; j++) {
+                    Metrics.stop(Operation.WARM_UP, Metrics.start());
+                }
+                measurementTime[i] = (double) (System.nanoTime() - start) / calls;
+            }
+            sampled = recorder.getSnapshot(Operation.WARM_UP).getCount() - 10_000_000;
+        } finally {
+            Metrics.setRecorder(null);
+            jar.close();
+        }
+
+        double perRead = (double) measurements / reads;
+        double overhead = perRead * measurementTime[1] / readTime * 100;
+        System.out.printf("Read: %.0f ns with %.1f measurements, %.1f ns per measurement, "
+                        + "%.1f ns at 1/16 (overhead %.2f%%)%n",
+                readTime, perRead, measurementTime[0], measurementTime[1], overhead);
+        if (Math.abs(sampled - 10_000_000 / 16) > 10_000 || overhead >= 1.0) {
+            throw new IllegalStateException("Sampling failed: " + sampled + " samples, " + overhead + "%");
+        }
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.metrics.Counter;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.SimpleMetricsRecorder;
+
+import java.security.GeneralSecurityException;
+
+public class MetricsTest {
+
+    public static void main(String[] args) throws GeneralSecurityException {
+        SimpleMetricsRecorder recorder = new SimpleMetricsRecorder();
+        Metrics.setRecorder(recorder);
+        try {
+            ShadowJar jar = ShadowJar.getInstance();
+            for (int i = 0; i < 2; i++) {
+                for (String[] names : SharedClassTest.values) {
+                    jar.addSharedClass(names[0], names[1]);
+                }
+            }
+        } finally {
+            Metrics.setRecorder(null);
+        }
+
+        System.out.print(recorder);
+        int expected = SharedClassTest.values.length;
+        if (recorder.getCount(Counter.SHARED_CLASS_HITS) != expected
+                || recorder.getCount(Counter.SHARED_CLASS_MISSES) != expected
+                || recorder.getCount(Counter.DECRYPT_CALLS) != 2L * expected) {
+            throw new IllegalStateException("Unexpected counter values");
+        }
+    }
+}
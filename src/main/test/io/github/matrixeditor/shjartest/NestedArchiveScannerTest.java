@@ -0,0 +1,120 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.scan.DexReport;
+import io.github.matrixeditor.shjar.scan.NestedArchiveScanner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class NestedArchiveScannerTest {
+
+    private static final int PADDING = 8 << 20;
+
+    public static void main(String[] args) throws IOException {
+        byte[] dex = DexScannerTest.createDex(2, 200);
+        File bundle = File.createTempFile("bundle", ".zip");
+        try {
+            // bundle.zip > app.apks > base.apk > classes.dex, classes2.dex
+            //                       > library.aar > classes.jar > classes.dex
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle))) {
+                zip.putNextEntry(new ZipEntry("app.apks"));
+                ZipOutputStream apks = nested(zip);
+                apks.putNextEntry(new ZipEntry("splits/base.apk"));
+                ZipOutputStream apk = nested(apks);
+                apk.putNextEntry(new ZipEntry("assets/padding.bin"));
+                byte[] zeros = new byte[1 << 20];
+                for (int i = 0; i < PADDING / zeros.length; i++) {
+                    apk.write(zeros);
+                }
+                for (String name : new String[]{"classes.dex", "classes2.dex"}) {
+                    apk.putNextEntry(new ZipEntry(name));
+                    apk.write(dex);
+                }
+                apk.close();
+
+                apks.putNextEntry(new ZipEntry("library.aar"));
+                ZipOutputStream aar = nested(apks);
+                aar.putNextEntry(new ZipEntry("classes.jar"));
+                ZipOutputStream jar = nested(aar);
+                jar.putNextEntry(new ZipEntry("classes.dex"));
+                jar.write(dex);
+                jar.close();
+                aar.close();
+                apks.close();
+
+                zip.putNextEntry(new ZipEntry("README.txt"));
+                zip.write("not an archive".getBytes());
+            }
+
+            NestedArchiveScanner scanner = new NestedArchiveScanner();
+            scanner.setBufferSize(1024);
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            long allocated = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            List<DexReport> reports = scanner.scan(bundle);
+            long time = (System.nanoTime() - start) / 1000000;
+            allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+            System.out.printf("Scanned %d MB bundle (%d KB on disk) in %d ms, allocated %d KB%n", PADDING >> 20,
+                    bundle.length() >> 10, time, allocated >> 10);
+
+            List<String> sources = new ArrayList<>();
+            for (DexReport report : reports) {
+                if (report.getWrappers().size() != 2 || report.getSecretKeys().size() != 1) {
+                    throw new IllegalStateException("Unexpected report: " + report);
+                }
+                sources.add(report.getSource().substring(bundle.getPath().length()));
+            }
+            List<String> expected = Arrays.asList("!app.apks!splits/base.apk!classes.dex",
+                    "!app.apks!splits/base.apk!classes2.dex", "!app.apks!library.aar!classes.jar!classes.dex");
+            if (!sources.equals(expected)) {
+                throw new IllegalStateException("Unexpected DEX files: " + sources);
+            }
+            // the padding is streamed, so far less than its size is allocated
+            if (allocated > PADDING / 4) {
+                throw new IllegalStateException("Nested archives were materialized");
+            }
+
+            scanner.setMaxDepth(2);
+            if (scanner.scan(bundle).size() != 2) {
+                throw new IllegalStateException("Depth limit was ignored");
+            }
+
+            scanner.setMaxDexSize(dex.length - 1);
+            try {
+                scanner.scan(bundle);
+                throw new IllegalStateException("DEX size limit was ignored");
+            } catch (IOException e) {
+                System.out.println("Rejected: " + e.getMessage());
+            }
+        } finally {
+            bundle.delete();
+        }
+    }
+
+    /**
+     * Writes a ZIP file into the current entry of another one.
+     */
+    private static ZipOutputStream nested(ZipOutputStream out) {
+        return new ZipOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+    }
+}
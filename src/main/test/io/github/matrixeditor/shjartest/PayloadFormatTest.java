@@ -0,0 +1,145 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.format.PayloadCodec;
+import io.github.matrixeditor.shjar.format.PayloadFormats;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+
+public class PayloadFormatTest {
+
+    /**
+     * A made up format for the test: the magic <code>ZXV2</code> followed by
+     * the JAR file XOR'ed with 0x5A.
+     */
+    static final class XorCodec implements PayloadCodec {
+
+        @Override
+        public String getName() {
+            return "xor-v2";
+        }
+
+        @Override
+        public boolean matches(byte[] header, int length) {
+            return length >= 4 && header[0] == 'Z' && header[1] == 'X' && header[2] == 'V' && header[3] == '2';
+        }
+
+        @Override
+        public long estimateDecodedLength(long length) {
+            return length - 4;
+        }
+
+        @Override
+        public byte[] decode(byte[] payload, Cipher cipher, SecretKey key) {
+            byte[] content = new byte[payload.length - 4];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) (payload[i + 4] ^ 0x5A);
+            }
+            return content;
+        }
+
+        @Override
+        public InputStream decode(InputStream payload, SecretKey key) throws IOException {
+            payload.readNBytes(4);
+            return new FilterInputStream(payload) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    return b < 0 ? b : (b ^ 0x5A);
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int count = super.read(b, off, len);
+                    for (int i = 0; i < count; i++) {
+                        b[off + i] ^= 0x5A;
+                    }
+                    return count;
+                }
+            };
+        }
+    }
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        File plain = File.createTempFile("plain", ".jar");
+        File v2 = File.createTempFile("payload", ".v2");
+        File garbage = File.createTempFile("garbage", ".txt");
+        plain.delete();
+        PayloadCodec xor = new XorCodec();
+        PayloadFormats.register(xor);
+        try {
+            try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))) {
+                jar.writeSelf(plain.getPath());
+            }
+            byte[] expected = Files.readAllBytes(plain.toPath());
+
+            // plain JAR files are only accepted after an explicit registration
+            if (PayloadFormats.detect(expected, expected.length) != null) {
+                throw new IllegalStateException("Plain JAR is detected by default");
+            }
+            try (ShadowJar jar = ShadowJar.getInstance()) {
+                jar.read(plain);
+                throw new IllegalStateException("Plain JAR was accepted by default");
+            } catch (IOException e) {
+                System.out.println(plain.getName() + ": " + e.getMessage());
+            }
+            PayloadFormats.register(PayloadFormats.PLAIN_JAR);
+            try (ShadowJar jar = ShadowJar.getInstance()) {
+                jar.read(new String(expected, StandardCharsets.ISO_8859_1));
+                throw new IllegalStateException("Plain JAR was read from a String");
+            } catch (IllegalArgumentException e) {
+                System.out.println(plain.getName() + " as String: " + e.getMessage());
+            }
+            byte[] encoded = new byte[expected.length + 4];
+            System.arraycopy("ZXV2".getBytes(StandardCharsets.US_ASCII), 0, encoded, 0, 4);
+            for (int i = 0; i < expected.length; i++) {
+                encoded[i + 4] = (byte) (expected[i] ^ 0x5A);
+            }
+            Files.write(v2.toPath(), encoded);
+            Files.writeString(garbage.toPath(), "<html>not a payload</html>");
+
+            File[] files = {new File("shadow.txt"), plain, v2};
+            String[] names = {"zxxz-v1", "jar", "xor-v2"};
+            for (int i = 0; i < files.length; i++) {
+                byte[] header = Files.readAllBytes(files[i].toPath());
+                PayloadCodec codec = PayloadFormats.detect(header, header.length);
+                if (codec == null || !codec.getName().equals(names[i])) {
+                    throw new IllegalStateException("Wrong format detected for " + files[i] + ": " + codec);
+                }
+
+                for (long budget : new long[]{Long.MAX_VALUE, 0}) {
+                    try (ShadowJar jar = ShadowJar.getInstance()) {
+                        jar.setMemoryBudget(budget);
+                        jar.read(files[i]);
+                        if (jar.getPayloadCodec() != codec || !ByteBuffer.wrap(expected).equals(jar.getContent())) {
+                            throw new IllegalStateException("Payload mismatch: " + files[i]);
+                        }
+                    }
+                }
+                System.out.println(files[i].getName() + ": " + codec.getName());
+            }
+
+            try (ShadowJar jar = ShadowJar.getInstance()) {
+                jar.read(garbage);
+                throw new IllegalStateException("Unknown format was accepted");
+            } catch (IOException e) {
+                System.out.println(garbage.getName() + ": " + e.getMessage());
+            }
+        } finally {
+            PayloadFormats.unregister(xor);
+            PayloadFormats.unregister(PayloadFormats.PLAIN_JAR);
+            plain.delete();
+            v2.delete();
+            garbage.delete();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.scan.DexReport;
+import io.github.matrixeditor.shjar.scan.ScanCoordinator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ScanCoordinatorTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File directory = Files.createTempDirectory("corpus").toFile();
+        List<File> files = new ArrayList<>();
+        try {
+            byte[] dex = DexScannerTest.createDex(2, 200);
+            for (int i = 0; i < 40; i++) {
+                File file = new File(directory, String.format("app-%02d.apk", i));
+                try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+                    for (String name : new String[]{"classes.dex", "classes2.dex"}) {
+                        out.putNextEntry(new ZipEntry(name));
+                        out.write(dex);
+                        out.closeEntry();
+                    }
+                }
+                files.add(file);
+            }
+
+            // a small APK with a huge classes.dex, crashes every worker
+            File bomb = new File(directory, "bomb.apk");
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(bomb))) {
+                out.putNextEntry(new ZipEntry("classes.dex"));
+                byte[] zeros = new byte[1 << 20];
+                for (int i = 0; i < 96; i++) {
+                    out.write(zeros);
+                }
+                out.closeEntry();
+            }
+            files.add(20, bomb);
+
+            ScanCoordinator coordinator = new ScanCoordinator();
+            coordinator.setWorkers(3);
+            coordinator.setShardSize(4);
+            coordinator.setMaxAttempts(2);
+            coordinator.addWorkerOption("-Xmx32m");
+
+            Map<File, Integer> reports = new HashMap<>();
+            List<File> errors = new ArrayList<>();
+            long start = System.nanoTime();
+            coordinator.run(files, new ScanCoordinator.Listener() {
+                @Override
+                public void onReport(File file, DexReport report) {
+                    if (report.getWrappers().size() != 2 || report.getSecretKeys().size() != 1) {
+                        throw new IllegalStateException("Unexpected report: " + report);
+                    }
+                    reports.merge(file, 1, Integer::sum);
+                }
+
+                @Override
+                public void onError(File file, String message) {
+                    System.out.println(file.getName() + ": " + message);
+                    errors.add(file);
+                }
+            });
+            System.out.printf("Scanned %d files in %d ms with %d restarts%n", files.size(),
+                    (System.nanoTime() - start) / 1000000, coordinator.getRestarts());
+
+            if (reports.size() != 40 || !reports.values().stream().allMatch(count -> count == 2)) {
+                throw new IllegalStateException("Missing reports: " + reports.size());
+            }
+            if (!errors.equals(Collections.singletonList(bomb)) || coordinator.getRestarts() != 2) {
+                throw new IllegalStateException("Crashed worker was not handled: " + errors);
+            }
+
+            // a named pipe without a writer blocks the worker forever
+            File pipe = new File(directory, "pipe.dex");
+            if (createPipe(pipe)) {
+                scanHanging(files, pipe);
+            } else {
+                System.out.println("Skipped hanging worker, mkfifo is not available");
+            }
+        } finally {
+            for (File file : Objects.requireNonNull(directory.listFiles())) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private static void scanHanging(List<File> files, File pipe) throws IOException, InterruptedException {
+        ScanCoordinator coordinator = new ScanCoordinator();
+        coordinator.setWorkers(1);
+        coordinator.setShardSize(4);
+        coordinator.setMaxAttempts(2);
+        coordinator.setPathTimeout(2, TimeUnit.SECONDS);
+
+        List<File> hanging = Arrays.asList(files.get(0), pipe, files.get(1));
+        List<File> scanned = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        long start = System.nanoTime();
+        coordinator.run(hanging, new ScanCoordinator.Listener() {
+            @Override
+            public void onReport(File file, DexReport report) {
+                scanned.add(file);
+            }
+
+            @Override
+            public void onError(File file, String message) {
+                System.out.println(file.getName() + ": " + message);
+                messages.add(file.getName() + ": " + message);
+            }
+        });
+        System.out.printf("Scanned %d files with a hanging worker in %d ms with %d restarts%n", hanging.size(),
+                (System.nanoTime() - start) / 1000000, coordinator.getRestarts());
+
+        if (!new HashSet<>(scanned).equals(Set.of(files.get(0), files.get(1))) || scanned.size() != 4) {
+            throw new IllegalStateException("Missing reports: " + scanned);
+        }
+        if (!messages.equals(Collections.singletonList("pipe.dex: Worker timed out on attempt 2"))
+                || coordinator.getRestarts() != 2) {
+            throw new IllegalStateException("Hanging worker was not handled: " + messages);
+        }
+    }
+
+    /**
+     * Creates a named pipe, returns <code>false</code> on platforms without
+     * <code>mkfifo</code>.
+     */
+    private static boolean createPipe(File pipe) throws InterruptedException {
+        try {
+            return new ProcessBuilder("mkfifo", pipe.getPath()).inheritIO().start().waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
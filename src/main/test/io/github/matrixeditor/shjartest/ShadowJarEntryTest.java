@@ -0,0 +1,64 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.metrics.Counter;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.SimpleMetricsRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ShadowJarEntryTest {
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        File jarFile = File.createTempFile("entries", ".jar");
+        jarFile.delete();
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))) {
+            jar.writeSelf(jarFile.getPath());
+        }
+
+        SimpleMetricsRecorder recorder = new SimpleMetricsRecorder();
+        Metrics.setRecorder(recorder);
+        try (ZipFile zip = new ZipFile(jarFile);
+             ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"));
+             ShadowJar spilled = ShadowJar.getInstance()) {
+            spilled.setMemoryBudget(0);
+            spilled.read(new File("shadow.txt"));
+
+            long size = 0;
+            for (ZipEntry entry : zip.stream().toArray(ZipEntry[]::new)) {
+                size += entry.getSize();
+                if (!jar.getEntryNames().contains(entry.getName())) {
+                    throw new IllegalStateException("Missing entry " + entry.getName());
+                }
+                byte[] expected;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    expected = in.readAllBytes();
+                }
+                for (ShadowJar source : new ShadowJar[]{jar, jar, spilled}) {
+                    if (!ByteBuffer.wrap(expected).equals(source.getEntry(entry.getName()))) {
+                        throw new IllegalStateException("Entry differs: " + entry.getName());
+                    }
+                }
+            }
+            System.out.printf("Retained %d bytes for %d bytes of entries%n", jar.getContentLength(), size);
+            if (jar.getEntry("missing.dex") != null) {
+                throw new IllegalStateException("Unknown entry found");
+            }
+        } finally {
+            Metrics.setRecorder(null);
+            jarFile.delete();
+        }
+
+        System.out.println("Entry cache hits: " + recorder.getCount(Counter.ENTRY_CACHE_HITS)
+                + ", misses: " + recorder.getCount(Counter.ENTRY_CACHE_MISSES));
+        if (recorder.getCount(Counter.ENTRY_CACHE_HITS) == 0) {
+            throw new IllegalStateException("Entry cache was not used");
+        }
+    }
+}
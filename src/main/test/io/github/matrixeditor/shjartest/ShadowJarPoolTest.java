@@ -0,0 +1,98 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.ShadowJarPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ShadowJarPoolTest {
+
+    private static final int PAYLOADS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        String content = new String(Files.readAllBytes(new File("shadow.txt").toPath()));
+
+        ShadowJar reused;
+        try (ShadowJarPool pool = new ShadowJarPool(ShadowJar.DEFAULT_SECRET_KEY, 4)) {
+            try (ShadowJar jar = pool.open(content)) {
+                jar.addSharedClass(SharedClassTest.values[0][0], SharedClassTest.values[0][1]);
+                reused = jar;
+            }
+            if (reused.getContentLength() != 0 || reused.getSharedClasses().length != 0) {
+                throw new IllegalStateException("Pooled ShadowJar was not reset");
+            }
+            try {
+                reused.writeSelf("output.jar");
+                throw new IllegalStateException("Idle ShadowJar is still usable");
+            } catch (IllegalStateException e) {
+                System.out.println("Idle: " + e.getMessage());
+            }
+
+            long length;
+            try (ShadowJar jar = pool.open(content)) {
+                length = jar.getContentLength();
+                if (jar != reused || length == 0) {
+                    throw new IllegalStateException("Pooled ShadowJar was not reused");
+                }
+            }
+
+            // concurrent use never creates more objects than threads
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(executor.submit(() -> {
+                        try (ShadowJar jar = pool.open(content)) {
+                            return jar.getContentLength();
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            System.out.println("Created: " + pool.getCreatedCount() + ", idle: " + pool.getIdleCount());
+            if (pool.getCreatedCount() > 5) {
+                throw new IllegalStateException("Too many ShadowJar objects created");
+            }
+
+            long pooled = allocatedPerPayload(content, pool);
+            System.out.printf("Allocated per payload: %d bytes unpooled, %d bytes pooled (%d bytes content)%n",
+                    allocatedPerPayload(content, null), pooled, length);
+            // a pooled object only allocates the decrypted content
+            if (pooled > length + 2048) {
+                throw new IllegalStateException("Pooled ShadowJar allocates too much: " + pooled + " bytes");
+            }
+        }
+        if (reused.isPooled()) {
+            throw new IllegalStateException("Idle ShadowJar was not closed with its pool");
+        }
+    }
+
+    private static long allocatedPerPayload(String content, ShadowJarPool pool)
+            throws GeneralSecurityException, IOException {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long start = 0;
+        for (int i = 0; i < 2 * PAYLOADS; i++) {
+            if (i == PAYLOADS) {
+                start = bean.getThreadAllocatedBytes(threadId);
+            }
+            try (ShadowJar jar = pool != null ? pool.open(content) : ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, content)) {
+                jar.getContentLength();
+            }
+        }
+        return (bean.getThreadAllocatedBytes(threadId) - start) / PAYLOADS;
+    }
+}
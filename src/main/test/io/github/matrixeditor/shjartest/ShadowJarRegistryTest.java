@@ -0,0 +1,67 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.ShadowJarRegistry;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.metrics.Counter;
+import io.github.matrixeditor.shjar.metrics.Metrics;
+import io.github.matrixeditor.shjar.metrics.SimpleMetricsRecorder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ShadowJarRegistryTest {
+
+    public static void main(String[] args) throws Exception {
+        SimpleMetricsRecorder recorder = new SimpleMetricsRecorder();
+        Metrics.setRecorder(recorder);
+
+        ShadowJarRegistry registry = new ShadowJarRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<ShadowJarRegistry.Lease> leases = new ArrayList<>();
+        try {
+            List<Future<ShadowJarRegistry.Lease>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> registry.acquire(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))));
+            }
+            for (Future<ShadowJarRegistry.Lease> future : futures) {
+                leases.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+            Metrics.setRecorder(null);
+        }
+
+        ShadowJar jar = leases.get(0).getJar();
+        System.out.println("Leases: " + leases.size() + ", payloads: " + registry.size()
+                + ", decryptions: " + recorder.getCount(Counter.DECRYPT_CALLS));
+        for (ShadowJarRegistry.Lease lease : leases) {
+            if (lease.getJar() != jar) {
+                throw new IllegalStateException("Payload was decrypted twice");
+            }
+        }
+        if (registry.size() != 1 || recorder.getCount(Counter.DECRYPT_CALLS) != 1 || !jar.isShared()) {
+            throw new IllegalStateException("Payload is not shared");
+        }
+
+        // another encoding of the same AES key
+        String encoded = ZxxZCipher.encodeXOR(ZxxZCipher.decodeXOR(ShadowJar.DEFAULT_SECRET_KEY));
+        ShadowJarRegistry.Lease other = registry.acquire(encoded, new File("shadow.txt"));
+        if (encoded.equals(ShadowJar.DEFAULT_SECRET_KEY) || other.getJar() != jar || registry.size() != 1) {
+            throw new IllegalStateException("Equivalent key was not shared");
+        }
+        leases.add(other);
+
+        for (ShadowJarRegistry.Lease lease : leases) {
+            lease.close();
+            lease.close();
+        }
+        if (registry.size() != 0 || jar.getContentLength() != 0) {
+            throw new IllegalStateException("Payload was not released");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.ShadowJarPool;
+import io.github.matrixeditor.shjar.SharedClass;
+import io.github.matrixeditor.shjar.crypto.ZxxZCipher;
+import io.github.matrixeditor.shjar.util.NameDictionary;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SharedClassNamesTest {
+
+    private static final int COUNT = 100_000;
+
+    private static final int CYCLES = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        ShadowJar jar = ShadowJar.getInstance();
+        SecretKey key = new SecretKeySpec(ZxxZCipher.decodeXOR(ShadowJar.DEFAULT_SECRET_KEY), "AES");
+        Cipher aes = Cipher.getInstance("AES/CBC/PKCS5Padding");
+
+        String encryptedMethod = encrypt(aes, key, "a");
+        List<String> classNames = new ArrayList<>(COUNT);
+        List<String> encryptedNames = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            String name = "com.google.android.ads.zxxz." + Integer.toString(i, 36);
+            classNames.add(name);
+            encryptedNames.add(encrypt(aes, key, name));
+        }
+
+        // every entry keeps its own copy of the encrypted names, as the
+        // caller usually drops its strings after the call
+        long before = usedMemory();
+        SharedClass[] classes = new SharedClass[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            classes[i] = jar.addSharedClass(copy(encryptedNames.get(i)), copy(encryptedMethod));
+        }
+        long dictionary = (usedMemory() - before) / COUNT;
+
+        before = usedMemory();
+        Map<Map.Entry<String, String>, Object[]> old = new ConcurrentHashMap<>();
+        for (int i = 0; i < COUNT; i++) {
+            String cls = copy(encryptedNames.get(i));
+            String mth = copy(encryptedMethod);
+            old.put(new AbstractMap.SimpleEntry<>(cls, mth),
+                    new Object[]{jar, cls, mth, copy(classNames.get(i)), copy("a")});
+        }
+        long strings = (usedMemory() - before) / COUNT;
+
+        System.out.println("Bytes per entry: " + dictionary + " (dictionary), " + strings + " (strings)");
+        if (old.size() != COUNT || dictionary >= strings) {
+            throw new IllegalStateException("Dictionary does not save memory");
+        }
+
+        for (int i = 0; i < COUNT; i += 997) {
+            SharedClass cls = classes[i];
+            if (!classNames.get(i).equals(cls.getSharedClass()) || !"a".equals(cls.getSharedMethod())
+                    || !encryptedNames.get(i).equals(cls.getEncryptedClassName())
+                    || !encryptedMethod.equals(cls.getEncryptedMethodName())) {
+                throw new IllegalStateException("Names do not match: " + cls);
+            }
+            if (jar.addSharedClass(encryptedNames.get(i), encryptedMethod) != cls) {
+                throw new IllegalStateException("Entry was not cached: " + cls);
+            }
+        }
+
+        // leading dots are kept and equal names share one entry
+        NameDictionary names = new NameDictionary();
+        for (String name : new String[]{".hidden", ".", "..a", ".a.b", "a.", "com..b"}) {
+            int handle = names.intern(name);
+            long size = names.getMemoryUsage();
+            for (int i = 0; i < 10_000; i++) {
+                if (names.intern(name) != handle) {
+                    throw new IllegalStateException("Name was not interned: " + name);
+                }
+            }
+            if (!name.equals(names.get(handle)) || names.getMemoryUsage() != size) {
+                throw new IllegalStateException("Name changed: " + name + " > " + names.get(handle));
+            }
+        }
+        SharedClass hidden = jar.addSharedClass(encrypt(aes, key, ".hidden"), encryptedMethod);
+        if (!".hidden".equals(hidden.getSharedClass())) {
+            throw new IllegalStateException("Name changed: " + hidden);
+        }
+
+        // a pooled jar drops its names on every return, so the memory stays
+        // flat no matter how many payloads are processed
+        String content = new String(Files.readAllBytes(new File("shadow.txt").toPath()));
+        try (ShadowJarPool pool = new ShadowJarPool(ShadowJar.DEFAULT_SECRET_KEY, 1)) {
+            cycle(pool, content, encryptedNames, encryptedMethod);
+            before = usedMemory();
+            cycle(pool, content, encryptedNames, encryptedMethod);
+            long growth = usedMemory() - before;
+            System.out.println("Growth after " + CYCLES + " pool cycles: " + growth + " bytes");
+            if (growth > 1 << 20) {
+                throw new IllegalStateException("Names are not released on reset: " + growth + " bytes");
+            }
+        }
+    }
+
+    private static void cycle(ShadowJarPool pool, String content, List<String> encryptedNames, String encryptedMethod)
+            throws Exception {
+        for (int i = 0; i < CYCLES; i++) {
+            try (ShadowJar jar = pool.open(content)) {
+                for (int j = 0; j < 10; j++) {
+                    jar.addSharedClass(encryptedNames.get((10 * i + j) % COUNT), encryptedMethod);
+                }
+            }
+        }
+    }
+
+    private static String encrypt(Cipher aes, SecretKey key, String name) throws Exception {
+        byte[] iv = ZxxZCipher.generateIV();
+        aes.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        byte[] plain = name.getBytes(StandardCharsets.UTF_8);
+        byte[] encrypted = new byte[iv.length + aes.getOutputSize(plain.length)];
+        System.arraycopy(iv, 0, encrypted, 0, iv.length);
+        aes.doFinal(plain, 0, plain.length, encrypted, iv.length);
+        return Base64.getEncoder().encodeToString(encrypted);
+    }
+
+    private static String copy(String value) {
+        // new String(String) would share the array of the original
+        return new String(value.toCharArray());
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.SharedClass;
+import io.github.matrixeditor.shjar.SharedClassSnapshot;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+
+public class SharedClassSnapshotTest {
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        File file = File.createTempFile("shared", ".snapshot");
+        file.deleteOnExit();
+
+        ShadowJar jar = ShadowJar.getInstance();
+        for (String[] names : SharedClassTest.values) {
+            jar.addSharedClass(names[0], names[1]);
+        }
+        jar.saveSnapshot(file);
+
+        ShadowJar mapped = ShadowJar.getInstance();
+        mapped.loadSnapshot(file);
+        SharedClassSnapshot snapshot = mapped.getSnapshot();
+        System.out.println("Snapshot entries: " + snapshot.size());
+
+        for (SharedClass expected : jar.getSharedClasses()) {
+            if (!expected.getSharedClass().equals(snapshot.lookup(expected.getEncryptedClassName()))
+                    || !expected.getSharedMethod().equals(snapshot.lookup(expected.getEncryptedMethodName()))) {
+                throw new IllegalStateException("Snapshot mismatch: " + expected);
+            }
+            System.out.println(mapped.addSharedClass(expected.getEncryptedClassName(),
+                    expected.getEncryptedMethodName()));
+        }
+        if (snapshot.lookup("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=") != null) {
+            throw new IllegalStateException("Unknown name resolved");
+        }
+
+        // corrupted headers, slots and entries are rejected when mapping,
+        // every pair is a position and the int written there
+        SecretKey key = mapped.getDecodedSecret();
+        byte[] content = Files.readAllBytes(file.toPath());
+        int slots = 28 + 4 * ByteBuffer.wrap(content).getInt(20);
+        int entry = ByteBuffer.wrap(content).getInt(slots);
+        int nameLength = (content.length - entry) << 16 | (ByteBuffer.wrap(content).getShort(entry + 2) & 0xFFFF);
+        expectCorrupted(file, key, content, 16, 0x40000000, 20, 0x40000000);
+        expectCorrupted(file, key, content, 16, 0x7FFFFFFF);
+        expectCorrupted(file, key, content, slots, content.length - 1);
+        expectCorrupted(file, key, content, slots, 0);
+        expectCorrupted(file, key, content, entry, nameLength);
+    }
+
+    private static void expectCorrupted(File file, SecretKey key, byte[] content, int... changes) throws IOException {
+        byte[] corrupted = content.clone();
+        for (int i = 0; i < changes.length; i += 2) {
+            ByteBuffer.wrap(corrupted).putInt(changes[i], changes[i + 1]);
+        }
+        Files.write(file.toPath(), corrupted);
+        try {
+            SharedClassSnapshot.map(file, key);
+            throw new IllegalStateException("Corrupted snapshot was mapped: " + changes[0]);
+        } catch (IOException e) {
+            System.out.println("Rejected: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.scan.SignatureSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class SignatureSetTest {
+
+    public static void main(String[] args) throws IOException {
+        SignatureSet.Builder builder = SignatureSet.builder();
+        builder.add(ShadowJar.DEFAULT_SECRET_KEY);
+        for (String[] names : SharedClassTest.values) {
+            builder.add(names[0]).add(names[1]);
+        }
+
+        File file = File.createTempFile("signatures", ".bin");
+        file.deleteOnExit();
+        builder.build().writeTo(file);
+
+        SignatureSet signatures = SignatureSet.map(file);
+        System.out.println("Signatures: " + signatures.size());
+        for (String[] names : SharedClassTest.values) {
+            byte[] bytes = names[0].getBytes(StandardCharsets.US_ASCII);
+            if (!signatures.contains(names[1]) || !signatures.contains(bytes, 0, bytes.length)) {
+                throw new IllegalStateException("Missing signature: " + names[0]);
+            }
+        }
+        if (signatures.contains("com.google.android.ads.zxxz.a")) {
+            throw new IllegalStateException("Unknown signature found");
+        }
+    }
+}
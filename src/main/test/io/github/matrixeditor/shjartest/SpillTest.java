@@ -0,0 +1,79 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+public class SpillTest {
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        File inMemory = File.createTempFile("memory", ".jar");
+        File spilled = File.createTempFile("spilled", ".jar");
+        inMemory.delete();
+        spilled.delete();
+
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))) {
+            jar.writeSelf(inMemory.getPath());
+        }
+
+        int spillFiles = countSpillFiles();
+        try (ShadowJar jar = ShadowJar.getInstance()) {
+            jar.setMemoryBudget(1024);
+            jar.read(new File("shadow.txt"));
+            System.out.println("Spilled: " + jar.isSpilled() + ", " + jar.getContentLength() + " bytes");
+            if (!jar.isSpilled() || jar.getContent().capacity() != jar.getContentLength()) {
+                throw new IllegalStateException("Content was not spilled");
+            }
+            jar.writeSelf(spilled.getPath());
+        }
+        if (countSpillFiles() != spillFiles) {
+            throw new IllegalStateException("Spill file was not deleted");
+        }
+
+        // a line-wrapped payload is decoded the same way in memory and spilled
+        File wrapped = File.createTempFile("wrapped", ".txt");
+        File wrappedSpilled = File.createTempFile("wrapped", ".jar");
+        wrappedSpilled.delete();
+        try {
+            String content = new String(Files.readAllBytes(new File("shadow.txt").toPath()), StandardCharsets.US_ASCII);
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < content.length(); i += 76) {
+                lines.append(content, i, Math.min(content.length(), i + 76)).append("\r\n");
+            }
+            Files.write(wrapped.toPath(), lines.toString().getBytes(StandardCharsets.US_ASCII));
+
+            try (ShadowJar jar = ShadowJar.getInstance()) {
+                jar.setMemoryBudget(0);
+                jar.read(wrapped);
+                if (!jar.isSpilled()) {
+                    throw new IllegalStateException("Wrapped content was not spilled");
+                }
+                jar.writeSelf(wrappedSpilled.getPath());
+            }
+
+            byte[] expected = Files.readAllBytes(inMemory.toPath());
+            if (!Arrays.equals(expected, Files.readAllBytes(spilled.toPath()))) {
+                throw new IllegalStateException("Spilled content differs");
+            }
+            if (!Arrays.equals(expected, Files.readAllBytes(wrappedSpilled.toPath()))) {
+                throw new IllegalStateException("Spilled wrapped content differs");
+            }
+        } finally {
+            inMemory.delete();
+            spilled.delete();
+            wrapped.delete();
+            wrappedSpilled.delete();
+        }
+    }
+
+    private static int countSpillFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir"))
+                .listFiles((directory, name) -> name.startsWith("shjar") && name.endsWith(".jar"));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.WarmUp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class WarmUpTest {
+
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            measure(args[0].equals("warm"));
+            return;
+        }
+
+        long[] cold = new long[RUNS];
+        long[] warm = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            cold[i] = runChild("cold");
+            warm[i] = runChild("warm");
+        }
+        Arrays.sort(cold);
+        Arrays.sort(warm);
+        System.out.printf("First call latency (median of %d JVMs): %.2f ms cold, %.2f ms after warm-up%n",
+                RUNS, cold[RUNS / 2] / 1e6, warm[RUNS / 2] / 1e6);
+        if (warm[RUNS / 2] >= cold[RUNS / 2]) {
+            throw new IllegalStateException("Warm-up did not reduce the first call latency");
+        }
+    }
+
+    /**
+     * Runs in a fresh JVM and prints the latency of the first real call.
+     */
+    private static void measure(boolean warmUp) throws Exception {
+        if (warmUp) {
+            WarmUp.startInBackground().get();
+            if (!WarmUp.isReady()) {
+                throw new IllegalStateException("Not ready after warm-up");
+            }
+        }
+
+        long start = System.nanoTime();
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))) {
+            jar.getEntry("classes.dex");
+            for (String[] names : SharedClassTest.values) {
+                jar.addSharedClass(names[0], names[1]);
+            }
+        }
+        System.out.println("LATENCY " + (System.nanoTime() - start));
+    }
+
+    private static long runChild(String mode) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(WarmUpTest.class.getName());
+        command.add(mode);
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+        long latency = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("LATENCY ")) {
+                    latency = Long.parseLong(line.substring(8));
+                }
+            }
+        }
+        if (process.waitFor() != 0 || latency < 0) {
+            throw new IllegalStateException("Child JVM failed: " + mode);
+        }
+        return latency;
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.format.PayloadFormats;
+import io.github.matrixeditor.shjar.util.ZipIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipIndexTest {
+
+    public static void main(String[] args) throws Exception {
+        byte[] content = new byte[100_000];
+        Arrays.fill(content, (byte) 'a');
+        byte[] archive = createArchive(content);
+
+        ZipIndex index = ZipIndex.parse(ByteBuffer.wrap(archive));
+        if (!Arrays.equals(index.read(index.getEntry("a.txt")), content)) {
+            throw new IllegalStateException("Entry differs");
+        }
+
+        // sizes that deflate cannot reach, that are too small or too large
+        // for the data, or that exceed the limit
+        expectRejected(archive, 0x7FFFFF00L, Integer.MAX_VALUE - 8);
+        expectRejected(archive, content.length - 1, Integer.MAX_VALUE - 8);
+        expectRejected(archive, content.length + 1, Integer.MAX_VALUE - 8);
+        expectRejected(archive, content.length, content.length - 1);
+
+        // a plain JAR file passes through ShadowJar.getEntry unchanged
+        File file = File.createTempFile("plain", ".jar");
+        PayloadFormats.register(PayloadFormats.PLAIN_JAR);
+        try (ShadowJar jar = ShadowJar.getInstance()) {
+            Files.write(file.toPath(), withDeclaredSize(archive, 0x7FFFFF00L));
+            jar.read(file);
+            try {
+                jar.getEntry("a.txt");
+                throw new IllegalStateException("Declared size was trusted");
+            } catch (IOException e) {
+                System.out.println("ShadowJar: " + e.getMessage());
+            }
+        } finally {
+            PayloadFormats.unregister(PayloadFormats.PLAIN_JAR);
+            file.delete();
+        }
+    }
+
+    private static void expectRejected(byte[] archive, long size, long maxEntrySize) throws IOException {
+        ZipIndex index = ZipIndex.parse(ByteBuffer.wrap(withDeclaredSize(archive, size)));
+        index.setMaxEntrySize(maxEntrySize);
+        try {
+            index.read(index.getEntry("a.txt"));
+            throw new IllegalStateException("Declared size " + size + " was accepted");
+        } catch (IOException e) {
+            System.out.println("Rejected: " + e.getMessage());
+        }
+    }
+
+    private static byte[] createArchive(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("a.txt"));
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Changes the uncompressed size of the first central directory entry.
+     */
+    private static byte[] withDeclaredSize(byte[] archive, long size) {
+        ByteBuffer buffer = ByteBuffer.wrap(archive.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        int directory = buffer.getInt(archive.length - 22 + 16);
+        buffer.putInt(directory + 24, (int) size);
+        return buffer.array();
+    }
+}
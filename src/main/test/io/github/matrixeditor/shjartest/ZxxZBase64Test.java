@@ -0,0 +1,90 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.crypto.ZxxZBase64;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+public class ZxxZBase64Test {
+
+    private static final String CHARACTERS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/=\r\n-_ \u00ff";
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        Random random = new Random(42);
+        int valid = 0;
+        for (int i = 0; i < 200_000; i++) {
+            byte[] input = random.nextBoolean() ? encoded(random) : garbage(random);
+
+            // line breaks are skipped, everything else must behave like the JDK decoder
+            String stripped = new String(input, StandardCharsets.ISO_8859_1).replace("\r", "").replace("\n", "");
+            byte[] expected = decode(() -> Base64.getDecoder().decode(stripped.getBytes(StandardCharsets.ISO_8859_1)));
+            byte[] actual = decode(() -> ZxxZBase64.decode(input));
+            // an offset skips the JDK decoder and forces the SWAR path
+            byte[] shifted = new byte[input.length + 1];
+            System.arraycopy(input, 0, shifted, 1, input.length);
+            byte[] buffer = new byte[ZxxZBase64.maxDecodedLength(input.length)];
+            byte[] swar = decode(() -> Arrays.copyOf(buffer, ZxxZBase64.decode(shifted, 1, input.length, buffer, 0)));
+            if (!Arrays.equals(expected, actual) || !Arrays.equals(expected, swar)) {
+                throw new IllegalStateException("Mismatch for input: " + stripped);
+            }
+            if (expected != null) {
+                valid++;
+            }
+        }
+        System.out.println("Compared " + valid + " valid inputs");
+
+        // a wrapped payload decrypts to the same JAR file
+        String payload = Files.readString(Paths.get("shadow.txt")).trim();
+        String wrapped = payload.replaceAll("(.{76})", "$1\r\n");
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, payload);
+             ShadowJar wrappedJar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, wrapped)) {
+            if (!jar.getContent().equals(wrappedJar.getContent())) {
+                throw new IllegalStateException("Wrapped payload differs");
+            }
+        }
+    }
+
+    private static byte[] encoded(Random random) {
+        byte[] plain = new byte[random.nextInt(100)];
+        random.nextBytes(plain);
+        StringBuilder builder = new StringBuilder(Base64.getEncoder().encodeToString(plain));
+        if (random.nextInt(3) == 0) {
+            builder = new StringBuilder(builder.toString().replace("=", ""));
+        }
+        for (int i = random.nextInt(4); i > 0; i--) {
+            builder.insert(random.nextInt(builder.length() + 1), random.nextBoolean() ? "\r\n" : "\n");
+        }
+        if (random.nextInt(5) == 0 && builder.length() > 0) {
+            builder.setCharAt(random.nextInt(builder.length()), CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+        return builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] garbage(Random random) {
+        byte[] input = new byte[random.nextInt(30)];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+        }
+        return input;
+    }
+
+    private static byte[] decode(Decoder decoder) {
+        try {
+            return decoder.decode();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private interface Decoder {
+        byte[] decode();
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.matrixeditor.shjartest;
+
+import io.github.matrixeditor.shjar.ShadowJar;
+import io.github.matrixeditor.shjar.crypto.ZxxZOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class ZxxZOutputStreamTest {
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        Map<String, byte[]> entries;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, new File("shadow.txt"))) {
+            entries = readEntries(jar.getContent());
+
+            // repack the decrypted entries straight into a new payload
+            try (ZipOutputStream zip = new ZipOutputStream(new ZxxZOutputStream(payload, jar.getDecodedSecret()))) {
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    zip.putNextEntry(new ZipEntry(entry.getKey()));
+                    zip.write(entry.getValue());
+                    zip.closeEntry();
+                }
+            }
+        }
+
+        String encrypted = payload.toString(StandardCharsets.US_ASCII);
+        try (ShadowJar jar = ShadowJar.open(ShadowJar.DEFAULT_SECRET_KEY, encrypted)) {
+            Map<String, byte[]> repacked = readEntries(jar.getContent());
+            System.out.println("Repacked " + repacked.size() + " entries into " + encrypted.length() + " chars");
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                if (!ByteBuffer.wrap(entry.getValue()).equals(ByteBuffer.wrap(repacked.get(entry.getKey())))) {
+                    throw new IllegalStateException("Entry differs: " + entry.getKey());
+                }
+            }
+        }
+    }
+
+    private static Map<String, byte[]> readEntries(ByteBuffer content) throws IOException {
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}